@@ -6,6 +6,34 @@ import java.nio.file.Path;
  * @author Shulnyaev Roman
  */
 public interface Index {
+
+    long NO_OCCURRENCE_POS = -1L;
+
+    // ****************************** //
+
     Path getSourceFilePath();
     OccurrencePosIterator getOccurrencePosIterator(String soughtForCharSeq);
+
+    /**
+     * @return итератор по вхождениям заданной строки в исходный файл в порядке возрастания позиций,
+     *         начиная с вхождения с номером offset (нумерация с 0), не более limit вхождений.
+     *
+     * @throws java.lang.IllegalArgumentException если offset < 0 || limit < 0.
+     */
+    OccurrencePosIterator getSortedOccurrencePosIterator(String soughtForCharSeq, long offset, long limit);
+
+    /**
+     * @return количество вхождений заданной строки в исходный файл.
+     */
+    long getOccurrenceCount(String soughtForCharSeq);
+
+    /**
+     * @return позиция первого вхождения заданной строки в исходный файл или NO_OCCURRENCE_POS, если вхождений нет.
+     */
+    long getFirstOccurrencePos(String soughtForCharSeq);
+
+    /**
+     * @return позиция последнего вхождения заданной строки в исходный файл или NO_OCCURRENCE_POS, если вхождений нет.
+     */
+    long getLastOccurrencePos(String soughtForCharSeq);
 }
@@ -1,5 +1,7 @@
 package net.devromik.textFileIndexer;
 
+import java.nio.LongBuffer;
+
 /**
  * Итератор по позициям вхождений заданной строки в исходный файл.
  *
@@ -17,5 +19,38 @@ package net.devromik.textFileIndexer;
 public interface OccurrencePosIterator {
     boolean hasNext();
     long getNext();
+
+    /**
+     * Записывает позиции не более чем maxCount следующих вхождений в occurrencePositions[offset, offset + maxCount - 1].
+     * Равносилен вызовам getNext() до тех пор, пока hasNext() == true, но проверяет предусловия однократно.
+     *
+     * @return количество записанных позиций (не менее 1).
+     * @throws java.lang.NullPointerException если occurrencePositions == null.
+     * @throws java.lang.IllegalArgumentException если offset < 0 || maxCount <= 0 || offset + maxCount > occurrencePositions.length.
+     * @throws java.lang.IllegalStateException если hasNext() == false.
+     */
+    int getNext(long[] occurrencePositions, int offset, int maxCount);
+
+    /**
+     * Записывает позиции не более чем occurrencePositions.remaining() следующих вхождений в occurrencePositions
+     * (начиная с его текущей позиции, которая сдвигается на количество записанных позиций).
+     *
+     * @return количество записанных позиций (не менее 1).
+     * @throws java.lang.NullPointerException если occurrencePositions == null.
+     * @throws java.lang.IllegalArgumentException если occurrencePositions.remaining() == 0.
+     * @throws java.lang.IllegalStateException если hasNext() == false.
+     */
+    int getNext(LongBuffer occurrencePositions);
+
+    /**
+     * Передает часть непроитерированных вхождений новому итератору, который может обрабатываться другим потоком
+     * (например, другой задачей fork/join) независимо от данного итератора.
+     * Каждую из частей следует исчерпать или закрыть: ресурсы, общие для частей, освобождаются при закрытии последней из них.
+     * Итераторы, перечисляющие вхождения в определенном порядке, не разделяются.
+     *
+     * @return итератор по отделенной части вхождений или null, если разделение невозможно (в том числе если hasNext() == false).
+     */
+    OccurrencePosIterator trySplit();
+
     void close();
 }
@@ -1,7 +1,7 @@
 package net.devromik.textFileIndexer.impl;
 
 import java.nio.file.Path;
-import net.devromik.textFileIndexer.Index;
+import net.devromik.textFileIndexer.*;
 import net.devromik.textFileIndexer.utils.PreconditionUtils;
 
 /**
@@ -18,6 +18,66 @@ public abstract class AbstractIndex implements Index {
         return sourceFilePath;
     }
 
+    /**
+     * Обходит и сортирует все вхождения. Индексы, способные перечислять вхождения по возрастанию позиций без обхода всех вхождений,
+     * переопределяют этот метод.
+     */
+    @Override
+    public OccurrencePosIterator getSortedOccurrencePosIterator(String soughtForCharSeq, long offset, long limit) {
+        PreconditionUtils.checkArgument(offset >= 0L && limit >= 0L);
+        return ArrayOccurrencePosIterator.sorted(getOccurrencePosIterator(soughtForCharSeq), offset, limit);
+    }
+
+    /**
+     * Обходит все вхождения. Индексы, способные подсчитывать вхождения без их обхода, переопределяют этот метод.
+     */
+    @Override
+    public long getOccurrenceCount(String soughtForCharSeq) {
+        OccurrencePosIterator occurrencePosIterator = getOccurrencePosIterator(soughtForCharSeq);
+        long occurrenceCount = 0L;
+
+        while (occurrencePosIterator.hasNext()) {
+            occurrencePosIterator.getNext();
+            ++occurrenceCount;
+        }
+
+        return occurrenceCount;
+    }
+
+    /**
+     * Обходит все вхождения. Индексы, способные находить первое вхождение без обхода всех вхождений, переопределяют этот метод.
+     */
+    @Override
+    public long getFirstOccurrencePos(String soughtForCharSeq) {
+        OccurrencePosIterator occurrencePosIterator = getOccurrencePosIterator(soughtForCharSeq);
+        long firstOccurrencePos = NO_OCCURRENCE_POS;
+
+        while (occurrencePosIterator.hasNext()) {
+            long occurrencePos = occurrencePosIterator.getNext();
+
+            if (firstOccurrencePos == NO_OCCURRENCE_POS || occurrencePos < firstOccurrencePos) {
+                firstOccurrencePos = occurrencePos;
+            }
+        }
+
+        return firstOccurrencePos;
+    }
+
+    /**
+     * Обходит все вхождения. Индексы, способные находить последнее вхождение без обхода всех вхождений, переопределяют этот метод.
+     */
+    @Override
+    public long getLastOccurrencePos(String soughtForCharSeq) {
+        OccurrencePosIterator occurrencePosIterator = getOccurrencePosIterator(soughtForCharSeq);
+        long lastOccurrencePos = NO_OCCURRENCE_POS;
+
+        while (occurrencePosIterator.hasNext()) {
+            lastOccurrencePos = Math.max(lastOccurrencePos, occurrencePosIterator.getNext());
+        }
+
+        return lastOccurrencePos;
+    }
+
     // ****************************** //
 
     private final Path sourceFilePath;
@@ -0,0 +1,78 @@
+package net.devromik.textFileIndexer.impl;
+
+import java.nio.LongBuffer;
+import net.devromik.textFileIndexer.OccurrencePosIterator;
+import net.devromik.textFileIndexer.utils.PreconditionUtils;
+import static java.lang.Math.min;
+
+/**
+ * Проверяет предусловия пакетного получения вхождений однократно и поручает само получение методу getNextUnchecked.
+ *
+ * @author Shulnyaev Roman
+ */
+public abstract class AbstractOccurrencePosIterator implements OccurrencePosIterator {
+
+    @Override
+    public int getNext(long[] occurrencePositions, int offset, int maxCount) {
+        PreconditionUtils.checkNotNull(occurrencePositions);
+        PreconditionUtils.checkArgument(offset >= 0 && maxCount > 0 && maxCount <= occurrencePositions.length - offset);
+        PreconditionUtils.checkState(hasNext());
+
+        return getNextUnchecked(occurrencePositions, offset, maxCount);
+    }
+
+    @Override
+    public int getNext(LongBuffer occurrencePositions) {
+        PreconditionUtils.checkNotNull(occurrencePositions);
+        PreconditionUtils.checkArgument(occurrencePositions.hasRemaining());
+        PreconditionUtils.checkState(hasNext());
+
+        if (occurrencePositions.hasArray()) {
+            int position = occurrencePositions.position();
+            int count = getNextUnchecked(occurrencePositions.array(), occurrencePositions.arrayOffset() + position, occurrencePositions.remaining());
+            occurrencePositions.position(position + count);
+
+            return count;
+        }
+
+        // Буфер вне кучи заполняется через промежуточный массив, выделяемый однократно.
+        if (chunk == null) {
+            chunk = new long[MAX_CHUNK_LENGTH];
+        }
+
+        int count = 0;
+
+        while (occurrencePositions.hasRemaining() && hasNext()) {
+            int chunkCount = getNextUnchecked(chunk, 0, min(occurrencePositions.remaining(), chunk.length));
+            occurrencePositions.put(chunk, 0, chunkCount);
+            count += chunkCount;
+        }
+
+        return count;
+    }
+
+    /**
+     * Итератор не разделяется. Итераторы, способные разделять вхождения, переопределяют этот метод.
+     */
+    @Override
+    public OccurrencePosIterator trySplit() {
+        return null;
+    }
+
+    // ****************************** //
+
+    /**
+     * Записывает позиции не более чем maxCount следующих вхождений, начиная с occurrencePositions[offset].
+     * Вызывается только при hasNext() == true; закрывает итератор, если вхождений больше нет.
+     *
+     * @return количество записанных позиций (не менее 1).
+     */
+    protected abstract int getNextUnchecked(long[] occurrencePositions, int offset, int maxCount);
+
+    // ****************************** //
+
+    private static final int MAX_CHUNK_LENGTH = 1024;
+
+    // Промежуточный массив для заполнения буферов вне кучи (см. getNext(LongBuffer)).
+    private long[] chunk;
+}
@@ -0,0 +1,183 @@
+package net.devromik.textFileIndexer.impl;
+
+import java.util.Arrays;
+import net.devromik.textFileIndexer.OccurrencePosIterator;
+import net.devromik.textFileIndexer.utils.*;
+import static java.lang.Math.min;
+
+/**
+ * Итератор по позициям вхождений, хранящимся в массиве.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class ArrayOccurrencePosIterator extends AbstractOccurrencePosIterator {
+
+    /**
+     * Обходит все вхождения, которые перечисляет iter, и возвращает итератор по вхождениям
+     * с номерами [offset, offset + limit) в порядке возрастания позиций.
+     *
+     * Хранятся только offset + limit (но не более ArrayUtils.MAX_ACCEPTABLE_ARRAY_LENGTH) наименьших позиций:
+     * пока их не больше, позиции просто накапливаются, а затем массив превращается в max-кучу,
+     * корень которой вытесняется каждой меньшей позицией.
+     *
+     * @throws java.lang.NullPointerException если iter == null.
+     * @throws java.lang.IllegalArgumentException если offset < 0 || limit < 0.
+     */
+    public static OccurrencePosIterator sorted(OccurrencePosIterator iter, long offset, long limit) {
+        PreconditionUtils.checkNotNull(iter);
+        PreconditionUtils.checkArgument(offset >= 0L && limit >= 0L);
+
+        int maxKeptCount = (int)min(offset > Long.MAX_VALUE - limit ? Long.MAX_VALUE : offset + limit, ArrayUtils.MAX_ACCEPTABLE_ARRAY_LENGTH);
+
+        if (maxKeptCount == 0) {
+            if (iter.hasNext()) {
+                iter.close();
+            }
+
+            return new ArrayOccurrencePosIterator(new long[0], 0, 0);
+        }
+
+        long[] occurrencePositions = new long[min(INITIAL_SORTED_OCCURRENCE_POS_CAPACITY, maxKeptCount)];
+        int occurrenceCount = 0;
+
+        while (iter.hasNext() && occurrenceCount < maxKeptCount) {
+            if (occurrenceCount == occurrencePositions.length) {
+                occurrencePositions = Arrays.copyOf(occurrencePositions, (int)min(2L * occurrencePositions.length, maxKeptCount));
+            }
+
+            occurrenceCount += iter.getNext(occurrencePositions, occurrenceCount, occurrencePositions.length - occurrenceCount);
+        }
+
+        if (iter.hasNext()) {
+            keepSmallest(iter, occurrencePositions);
+        }
+
+        Arrays.sort(occurrencePositions, 0, occurrenceCount);
+        int firstPos = (int)min(offset, occurrenceCount);
+
+        return new ArrayOccurrencePosIterator(occurrencePositions, firstPos, (int)min(limit, occurrenceCount - firstPos));
+    }
+
+    /**
+     * @throws java.lang.NullPointerException если occurrencePositions == null.
+     * @throws java.lang.IllegalArgumentException если offset < 0 || length < 0 || offset + length > occurrencePositions.length.
+     */
+    public ArrayOccurrencePosIterator(long[] occurrencePositions, int offset, int length) {
+        PreconditionUtils.checkNotNull(occurrencePositions);
+        PreconditionUtils.checkArgument(offset >= 0 && length >= 0 && length <= occurrencePositions.length - offset);
+
+        this.occurrencePositions = occurrencePositions;
+        this.pos = offset;
+        this.followingLastPos = offset + length;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pos < followingLastPos;
+    }
+
+    @Override
+    public long getNext() {
+        checkNotClosed();
+        PreconditionUtils.checkState(hasNext());
+
+        long occurrencePos = occurrencePositions[pos++];
+
+        if (!hasNext()) {
+            close();
+        }
+
+        return occurrencePos;
+    }
+
+    @Override
+    public void close() {
+        checkNotClosed();
+        occurrencePositions = null;
+        pos = followingLastPos;
+        closed = true;
+    }
+
+    // ****************************** //
+
+    @Override
+    protected int getNextUnchecked(long[] occurrencePositions, int offset, int maxCount) {
+        int count = min(maxCount, followingLastPos - pos);
+        System.arraycopy(this.occurrencePositions, pos, occurrencePositions, offset, count);
+        pos += count;
+
+        if (!hasNext()) {
+            close();
+        }
+
+        return count;
+    }
+
+    // ****************************** //
+
+    /**
+     * Оставляет в заполненном массиве keptPositions наименьшие из его позиций и оставшихся позиций iter.
+     */
+    private static void keepSmallest(OccurrencePosIterator iter, long[] keptPositions) {
+        int keptCount = keptPositions.length;
+
+        for (int i = keptCount / 2 - 1; i >= 0; --i) {
+            siftDown(keptPositions, keptCount, i);
+        }
+
+        long[] chunk = new long[MAX_CHUNK_LENGTH];
+
+        while (iter.hasNext()) {
+            int chunkCount = iter.getNext(chunk, 0, chunk.length);
+
+            for (int i = 0; i < chunkCount; ++i) {
+                if (chunk[i] < keptPositions[0]) {
+                    keptPositions[0] = chunk[i];
+                    siftDown(keptPositions, keptCount, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Восстанавливает свойство max-кучи heap[0, heapSize) для поддерева с корнем node.
+     */
+    private static void siftDown(long[] heap, int heapSize, int node) {
+        long value = heap[node];
+
+        while (true) {
+            int child = 2 * node + 1;
+
+            if (child >= heapSize) {
+                break;
+            }
+
+            if (child + 1 < heapSize && heap[child + 1] > heap[child]) {
+                ++child;
+            }
+
+            if (heap[child] <= value) {
+                break;
+            }
+
+            heap[node] = heap[child];
+            node = child;
+        }
+
+        heap[node] = value;
+    }
+
+    private void checkNotClosed() {
+        PreconditionUtils.checkState(!closed);
+    }
+
+    // ****************************** //
+
+    private static final int INITIAL_SORTED_OCCURRENCE_POS_CAPACITY = 16;
+    private static final int MAX_CHUNK_LENGTH = 1024;
+
+    private long[] occurrencePositions;
+    private int pos;
+    private final int followingLastPos;
+    private boolean closed;
+}
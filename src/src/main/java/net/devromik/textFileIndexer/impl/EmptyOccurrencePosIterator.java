@@ -1,6 +1,8 @@
 package net.devromik.textFileIndexer.impl;
 
+import java.nio.LongBuffer;
 import net.devromik.textFileIndexer.OccurrencePosIterator;
+import net.devromik.textFileIndexer.utils.PreconditionUtils;
 
 /**
  * @author Shulnyaev Roman
@@ -20,6 +22,35 @@ public enum EmptyOccurrencePosIterator implements OccurrencePosIterator {
         throw new UnsupportedOperationException("Not supported");
     }
 
+    /**
+     * Вхождений нет: после проверки аргументов всегда бросает IllegalStateException (см. OccurrencePosIterator).
+     */
+    @Override
+    public int getNext(long[] occurrencePositions, int offset, int maxCount) {
+        PreconditionUtils.checkNotNull(occurrencePositions);
+        PreconditionUtils.checkArgument(offset >= 0 && maxCount > 0 && maxCount <= occurrencePositions.length - offset);
+        PreconditionUtils.checkState(hasNext());
+
+        return 0;
+    }
+
+    /**
+     * Вхождений нет: после проверки аргумента всегда бросает IllegalStateException (см. OccurrencePosIterator).
+     */
+    @Override
+    public int getNext(LongBuffer occurrencePositions) {
+        PreconditionUtils.checkNotNull(occurrencePositions);
+        PreconditionUtils.checkArgument(occurrencePositions.hasRemaining());
+        PreconditionUtils.checkState(hasNext());
+
+        return 0;
+    }
+
+    @Override
+    public OccurrencePosIterator trySplit() {
+        return null;
+    }
+
     @Override
     public void close() {}
 }
@@ -0,0 +1,331 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import org.slf4j.*;
+import static java.lang.Thread.*;
+import static java.text.MessageFormat.format;
+import net.devromik.textFileIndexer.*;
+import static net.devromik.textFileIndexer.IndexingStatus.*;
+import net.devromik.textFileIndexer.impl.AbstractIndexBuilder;
+import net.devromik.textFileIndexer.impl.utils.MappedSourceFileReader;
+import static net.devromik.textFileIndexer.impl.utils.IndexEventUtils.*;
+import net.devromik.textFileIndexer.utils.*;
+import static net.devromik.textFileIndexer.utils.ExceptionUtils.*;
+import static net.devromik.textFileIndexer.utils.PreconditionUtils.checkState;
+import static net.devromik.textFileIndexer.utils.Slf4jUtils.logException;
+import static org.slf4j.LoggerFactory.*;
+
+/**
+ * Построитель индекса на основе суффиксного автомата, целиком размещаемого в основной памяти.
+ * Наследники определяют, как исходный файл читается в виде последовательности символов и какой индекс предоставляется читателям.
+ *
+ * @author Shulnyaev Roman
+ */
+public abstract class AbstractMainMemorySuffixAutomationIndexBuilder extends AbstractIndexBuilder {
+
+    /**
+     * @throws java.lang.NullPointerException если settings == null.
+     */
+    AbstractMainMemorySuffixAutomationIndexBuilder(
+        File sourceFile,
+        Charset sourceFileEncoding,
+        File targetDirectory,
+        IndexEventListener indexEventListener,
+        MainMemorySuffixAutomationIndexBuilderSettings settings) {
+
+        super(
+            sourceFile,
+            sourceFileEncoding,
+            targetDirectory,
+            indexEventListener);
+        this.settings = PreconditionUtils.checkNotNull(settings);
+    }
+
+    public MainMemorySuffixAutomationIndexBuilderSettings getSettings() {
+        return settings;
+    }
+
+    /* ***** Реализация IndexBuilder. ***** */
+
+    @Override
+    public void build() {
+        synchronized (buildingMon) {
+            if (getBuildingStatus() != INDEXING_NOT_STARTED) {
+                return;
+            }
+
+            prepareToBuilding();
+            setBuildingStatus(INDEXING_IN_PROGRESS);
+
+            if (!buildingCompleted) {
+                notifyOnIndexBuildingStarted(getIndexEventListener(), getSourceFilePath());
+                startBuildingThread();
+            }
+            else {
+                automation.startPostbuildOptimizing();
+            }
+        }
+    }
+
+    @Override
+    public void cancelBuilding() {
+        synchronized (buildingMon) {
+            if (getBuildingStatus() != INDEXING_IN_PROGRESS) {
+                return;
+            }
+
+            setBuildingStatus(INDEXING_CANCELLING_IN_PROGRESS);
+
+            if (buildingCompleted) {
+                automation.stopPostbuildOptimizing();
+            }
+            else {
+                stopBuildingThread();
+            }
+
+            setBuildingStatus(INDEXING_NOT_STARTED);
+            notifyOnIndexBuildingCancelled(getIndexEventListener(), getSourceFilePath());
+        }
+    }
+
+    @Override
+    public Index getIndex() {
+        checkPreparedToBuilding();
+        return index;
+    }
+
+    // ****************************** //
+
+    static final long ERROR_TIMEOUT_IN_MILLIS = 100L;
+
+    /* ***** Задача построения индекса. ***** */
+
+    private static final String BUILDING_THREAD_NAME_PATTERN = "Main Memory Suffix Automation Index Builder [source file pathname = \"{0}\"]";
+
+    private class Building implements Runnable {
+
+        @Override
+        public void run() {
+            if (settings.isStoragePresizingUsed() && !presizeAutomation()) {
+                return;
+            }
+
+            while (!buildingCompleted && !interrupted()) {
+                try {
+                    int readCharCount = sourceFileReader.read(readingBlock, 0, readingBlock.length);
+
+                    if (readCharCount != END_OF_FILE) {
+                        automation.extend(readingBlock, 0, readCharCount);
+
+                        // Прогресс публикуется один раз на блок (пишет только поток построения).
+                        handledSourceFileCharCount += readCharCount;
+                    }
+                    else {
+                        synchronized (buildingMon) {
+                            buildingCompleted = true;
+                            automation.onBuildCompleted();
+                        }
+
+                        setBuildingStatus(INDEXING_SUCCESSFULLY_COMPLETED);
+                        notifyOnIndexBuildingSuccessfullyCompleted(
+                            getIndexEventListener(),
+                            getSourceFilePath());
+                        return;
+                    }
+                }
+                catch (Exception exception) {
+                    logException(logger, exception);
+                    notifyOnIndexBuildingErrorOccurred(
+                        getIndexEventListener(),
+                        getSourceFilePath(),
+                        exception);
+
+                    try {
+                        sleep(ERROR_TIMEOUT_IN_MILLIS);
+                    }
+                    catch (InterruptedException interruptedException) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Предварительный проход по исходному файлу выполняется потоком построения до первого блока,
+         * поэтому build() не ожидает его завершения, а cancelBuilding() прерывает его.
+         * Ошибки обрабатываются так же, как ошибки чтения: проход повторяется после паузы.
+         *
+         * @return false, если поток построения прерван.
+         */
+        private boolean presizeAutomation() {
+            while (!automationPresized) {
+                try {
+                    automation.presize(MappedSourceFileReader.countChars(getSourceFile(), getSourceFileReadingEncoding()));
+                    automationPresized = true;
+                }
+                catch (Exception exception) {
+                    if (currentThread().isInterrupted()) {
+                        return false;
+                    }
+
+                    logException(logger, exception);
+                    notifyOnIndexBuildingErrorOccurred(
+                        getIndexEventListener(),
+                        getSourceFilePath(),
+                        exception);
+
+                    try {
+                        sleep(ERROR_TIMEOUT_IN_MILLIS);
+                    }
+                    catch (InterruptedException interruptedException) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        // ****************************** //
+
+        private static final int END_OF_FILE = -1;
+    }
+
+    long getHandledSourceFileCharCount() {
+        return handledSourceFileCharCount;
+    }
+
+    boolean isPostbuildOptimizingCompleted() {
+        return automation != null && automation.isPostbuildOptimizingCompleted();
+    }
+
+    // ****************************** //
+
+    private void checkSourceFile() {
+        try {
+            PreconditionUtils.checkSourceFile(getSourceFile());
+        }
+        catch (Exception exception) {
+            throw wrapInIllegalStateException(exception);
+        }
+    }
+
+    private void prepareToBuilding() {
+        if (isPreparedToBuilding()) {
+            return;
+        }
+
+        checkSourceFile();
+        prepareAutomation();
+        prepareIndex();
+        prepareSourceFileReader();
+        setPreparedToBuilding(true);
+    }
+
+    private void checkPreparedToBuilding() {
+        checkState(preparedToBuilding);
+    }
+
+    private void setPreparedToBuilding(boolean preparedToBuilding) {
+        this.preparedToBuilding = preparedToBuilding;
+    }
+
+    private boolean isPreparedToBuilding() {
+        return preparedToBuilding;
+    }
+
+    /**
+     * @return кодировку, в которой исходный файл читается в виде последовательности символов суффиксного автомата.
+     */
+    abstract Charset getSourceFileReadingEncoding();
+
+    abstract Index makeIndex(SuffixAutomation automation);
+
+    /**
+     * Буферизация не требуется: исходный файл читается блоками в readingBlock.
+     *
+     * @return читателя исходного файла в кодировке getSourceFileReadingEncoding().
+     */
+    Reader makeSourceFileReader(MainMemorySuffixAutomationIndexBuilderSettings settings) throws IOException {
+        return
+            settings.isSourceFileMappingUsed() ?
+            new MappedSourceFileReader(getSourceFile(), getSourceFileReadingEncoding()) :
+            new InputStreamReader(new FileInputStream(getSourceFile()), getSourceFileReadingEncoding());
+    }
+
+    private void prepareSourceFileReader() {
+        try {
+            sourceFileReader = makeSourceFileReader(settings);
+            readingBlock = new char[settings.getReadingBlockLength()];
+        }
+        catch (Exception exception) {
+            logException(logger, exception);
+            notifyOnIndexBuildingErrorOccurred(getIndexEventListener(), getSourceFilePath(), exception);
+            throw wrapInRuntimeException(exception);
+        }
+    }
+
+    private void prepareAutomation() {
+        this.automation =
+            new SuffixAutomation(
+                getSourceFilePath(),
+                settings.getPostbuildOptimizingPool(),
+                settings.getDefinitiveAutomationStorage(),
+                getTargetDirectory());
+
+        automation.setVisibilityEpoch(settings.getVisibilityEpochCharCount(), settings.getVisibilityEpochMillis());
+    }
+
+    private void prepareIndex() {
+        this.index = makeIndex(automation);
+    }
+
+    private String makeBuildingThreadName() {
+        return format(BUILDING_THREAD_NAME_PATTERN, getSourceFilePath());
+    }
+
+    private void startBuildingThread() {
+        if (buildingThread == null) {
+            buildingThread = new Thread(new Building(), makeBuildingThreadName());
+            buildingThread.start();
+        }
+    }
+
+    private void stopBuildingThread() {
+        buildingThread.interrupt();
+
+        try {
+            logger.info("Waiting for building thread \"{}\" stopped...", makeBuildingThreadName());
+            buildingThread.join();
+            logger.info("Building thread \"{}\" successfully stopped", makeBuildingThreadName());
+        }
+        catch (InterruptedException exception) {
+            logger.error("Interrupted while waiting for building thread \"{}\" stopped", makeBuildingThreadName());
+        }
+        finally {
+            buildingThread = null;
+        }
+    }
+
+    // ****************************** //
+
+    private SuffixAutomation automation;
+    private Index index;
+
+    private final MainMemorySuffixAutomationIndexBuilderSettings settings;
+
+    private boolean preparedToBuilding;
+    private Reader sourceFileReader;
+    private char[] readingBlock;
+
+    // Используется только потоком построения.
+    private boolean automationPresized;
+    private volatile long handledSourceFileCharCount;
+    private boolean buildingCompleted;
+    private Thread buildingThread;
+    private final Object buildingMon = new Object();
+
+    // Логгер.
+    private final static Logger logger = getLogger(AbstractMainMemorySuffixAutomationIndexBuilder.class);
+}
@@ -0,0 +1,66 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.util.Arrays;
+
+/**
+ * Алфавит исходной строки: символы, встречающиеся в ней, и их плотные номера (символы окончательного суффиксного автомата).
+ *
+ * Символы добавляются потоком построения по мере чтения исходной строки (add).
+ * После построения метод compact нумерует их по возрастанию кодов: 0, 1, ..., getSize() - 1.
+ * Нумерация сохраняет порядок символов, поэтому переходы, упорядоченные по символам, упорядочены и по их номерам.
+ */
+final class Alphabet {
+
+    static final int NO_SYMBOL = -1;
+
+    // ****************************** //
+
+    void add(char ch) {
+        charBits[ch >>> 6] |= 1L << ch;
+    }
+
+    /**
+     * Нумерует добавленные символы. Может вызываться повторно.
+     */
+    void compact() {
+        int maxChar = -1;
+
+        for (int i = charBits.length - 1; i >= 0 && maxChar == -1; --i) {
+            if (charBits[i] != 0L) {
+                maxChar = i * Long.SIZE + Long.SIZE - 1 - Long.numberOfLeadingZeros(charBits[i]);
+            }
+        }
+
+        int[] newSymbols = new int[maxChar + 1];
+        Arrays.fill(newSymbols, NO_SYMBOL);
+        int newSize = 0;
+
+        for (int ch = 0; ch <= maxChar; ++ch) {
+            if ((charBits[ch >>> 6] & (1L << ch)) != 0L) {
+                newSymbols[ch] = newSize++;
+            }
+        }
+
+        symbols = newSymbols;
+        size = newSize;
+    }
+
+    /**
+     * @return номер символа ch или NO_SYMBOL, если ch не встречается в исходной строке.
+     */
+    int getSymbol(char ch) {
+        return ch < symbols.length ? symbols[ch] : NO_SYMBOL;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    // ****************************** //
+
+    private final long[] charBits = new long[(Character.MAX_VALUE + 1) / Long.SIZE];
+
+    // Номера символов по их кодам (до наибольшего встречающегося символа включительно).
+    private int[] symbols = new int[0];
+    private int size;
+}
@@ -1,103 +1,142 @@
 package net.devromik.textFileIndexer.impl.suffixAutomation;
 
-import java.util.*;
-import java.util.concurrent.*;
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Math.*;
 import static net.devromik.textFileIndexer.impl.suffixAutomation.SuffixAutomation.*;
-import net.devromik.textFileIndexer.utils.*;
 
 /**
  * Состояние суффиксного автомата времени построения суффиксного автомата.
  *
- * Менее эффективное по скорости и потреблению памяти, чем DefinitiveState,
+ * Менее эффективное по скорости и потреблению памяти, чем DefinitiveSuffixAutomation,
  * но допускающее выполняющиеся "одновременно" построение суффиксного автомата и чтение из него (поиск всех вхождений заданной строки)
  * с высокой степенью конкуррентности (практически без блокировок).
  *
- * После того, как построение суффиксного автомата будет завершено и все операции чтения, инициированные до завершения построения суффиксного автомата, будут выполнены,
- * все состояния BuildingTimeState будут заменены на эквивалентные им состояния DefinitiveState прозрачным для читателей образом.
- * Причем это будет сделано постепенно, без блокировки читателей.
+ * После того, как построение суффиксного автомата будет завершено,
+ * состояния BuildingTimeState будут скопированы в окончательный суффиксный автомат DefinitiveSuffixAutomation,
+ * который будет использоваться последующими операциями чтения. Это делается без блокировки читателей.
  * См. SuffixAutomation.
  *
+ * Хранит только версионируемые данные состояния - переходы и обратные суффиксные ссылки.
+ * Скалярные атрибуты состояния хранятся в параллельных массивах BuildingTimeStateAttributes.
+ *
+ * Версии переходов и обратных суффиксных ссылок хранятся в примитивных массивах (таблицах версий),
+ * каждый элемент (слот) которых занимает несколько последовательных ячеек типа long.
+ * Переходы маловетвящихся состояний хранятся в небольшой таблице, заполняемой последовательно,
+ * переходы сильноветвящихся состояний - в таблице с открытой адресацией (линейное пробирование по символу перехода).
+ * Обратные суффиксные ссылки всегда хранятся в последовательно заполняемой таблице.
+ *
+ * Схема синхронизации (один писатель, много читателей):
+ *     - слот, у которого шаг создания равен нулю, считается свободным (шаги построения суффиксного автомата положительны).
+ *     - писатель никогда не освобождает и не переиспользует занятые слоты текущей таблицы.
+ *       Новая версия записывается в свободный слот, а замененная версия лишь помечается как недействительная начиная с текущего шага построения.
+ *       Исключение - версии, созданные после последнего опубликованного шага построения (в текущей эпохе видимости, см. SuffixAutomation):
+ *       они не видны ни одному читателю, поэтому переход перенаправляется, а обратная суффиксная ссылка удаляется на месте.
+ *     - если в текущей таблице нет места, писатель создает новую таблицу, переносит в нее все версии, которые еще могут быть видны читателям,
+ *       и публикует ее через volatile-ссылку. Читатели, уже получившие ссылку на старую таблицу, продолжают работать с ней.
+ *     - читатель видит суффиксный автомат по состоянию на последний завершенный (опубликованный) шаг построения,
+ *       поэтому версии, создаваемые на текущем шаге (в том числе записанные не полностью), для него всегда невидимы.
+ *
+ * Версии, помеченные как недействительные (мертвые), удаляются при переносе в новую таблицу, как только перестают быть видны всем читателям.
+ * Чтобы мертвые версии не накапливались в состояниях, таблицы которых долго не растут,
+ * поток построения периодически переносит таблицы таких состояний (см. sweepDeadVersions и SuffixAutomation).
+ * Количество хранимых мертвых версий всех состояний ведется в ParallelToBuildingReadingInfo.retainedDeadVersionCount.
+ *
  * @author Shulnyaev Roman
  */
 final class BuildingTimeState implements State {
 
-    BuildingTimeState(
-        int greatestSubstringLength,
-        int minSubstringEndPos,
-        boolean clone,
-        ParallelToBuildingReadingInfo parallelToBuildReadInfo) {
-
-        this.greatestSubstringLength = greatestSubstringLength;
-        this.minSubstringEndPos = minSubstringEndPos;
-        this.clone = clone;
+    BuildingTimeState(ParallelToBuildingReadingInfo parallelToBuildReadInfo) {
         this.parallelToBuildReadInfo = parallelToBuildReadInfo;
     }
 
-    @Override
-    public int getGreatestSubstringLength() {
-        return greatestSubstringLength;
-    }
+    /* ***** Обратные суффиксные ссылки. ***** */
 
     @Override
-    public int getMinSubstringEndPos() {
-        return minSubstringEndPos;
-    }
+    public void addInvertedSuffixLink(long sourceStateId, long currentAutomationBuildStep) {
+        long[] table = invertedSuffixLinkTable;
 
-    @Override
-    public void setSuffixLink(int targetStateId) {
-        this.suffixLink = targetStateId;
+        if (table == null || invertedSuffixLinkSlotCount == table.length / INVERTED_SUFFIX_LINK_SLOT_SIZE) {
+            table = makeInvertedSuffixLinkTableWithFreeSlot(table, currentAutomationBuildStep);
+            writeInvertedSuffixLink(table, invertedSuffixLinkSlotCount++, sourceStateId, currentAutomationBuildStep);
+            invertedSuffixLinkTable = table;
+        }
+        else {
+            writeInvertedSuffixLink(table, invertedSuffixLinkSlotCount++, sourceStateId, currentAutomationBuildStep);
+        }
     }
 
     @Override
-    public int getSuffixLink() {
-        return suffixLink;
-    }
+    public void removeInvertedSuffixLink(long sourceStateId, long currentAutomationBuildStep) {
+        long[] table = invertedSuffixLinkTable;
 
-    @Override
-    public void addInvertedSuffixLink(int sourceStateId, int currentAutomationBuildStep) {
-        invertedSuffixLinks.put(new OrderedIntPair(sourceStateId, currentAutomationBuildStep),
-                                GREATER_THAN_MAX_BUILDING_STEP);
-    }
+        if (table == null) {
+            return;
+        }
 
-    @Override
-    public void removeInvertedSuffixLink(int sourceStateId, int currentAutomationBuildStep) {
-        Map<OrderedIntPair, Integer> removingInvertedSuffixLinks =
-            invertedSuffixLinks.subMap(
-                new OrderedIntPair(sourceStateId, LESS_THAN_MIN_BUILDING_STEP),
-                new OrderedIntPair(sourceStateId, GREATER_THAN_MAX_BUILDING_STEP + 1));
-        int minParallelToReadBuildStep = getMinParallelToReadingBuildingStep(currentAutomationBuildStep);
-
-        for (OrderedIntPair removingInvertedSuffixLink : removingInvertedSuffixLinks.keySet()) {
-            if (currentAutomationBuildStep > 0 && !isActualInvertedSuffixLink(removingInvertedSuffixLink, minParallelToReadBuildStep)) {
-                invertedSuffixLinks.remove(removingInvertedSuffixLink);
-            }
-            else if (isActualInvertedSuffixLink(removingInvertedSuffixLink, currentAutomationBuildStep)) {
-                invertedSuffixLinks.replace(removingInvertedSuffixLink, currentAutomationBuildStep);
+        for (int slotPos = 0; slotPos < invertedSuffixLinkSlotCount * INVERTED_SUFFIX_LINK_SLOT_SIZE; slotPos += INVERTED_SUFFIX_LINK_SLOT_SIZE) {
+            if (table[slotPos + SOURCE_STATE_ID_OFFSET] == sourceStateId && table[slotPos + FIRST_IRRELEVANT_BUILD_STEP_OFFSET] == GREATER_THAN_MAX_BUILDING_STEP) {
+                if (table[slotPos + CREATION_BUILD_STEP_OFFSET] > parallelToBuildReadInfo.lastPublishedBuildStep) {
+                    removeUnpublishedInvertedSuffixLink(table, slotPos);
+                    return;
+                }
+
+                table[slotPos + FIRST_IRRELEVANT_BUILD_STEP_OFFSET] = currentAutomationBuildStep;
+                ++deadInvertedSuffixLinkVersionCount;
+                ++parallelToBuildReadInfo.retainedDeadVersionCount;
+                return;
             }
         }
     }
 
-    private int getMinParallelToReadingBuildingStep(int currentAutomationBuildStep) {
-        int minParallelToReadBuildStep = parallelToBuildReadInfo.minLastVisibleToReadBuildStep;
+    /**
+     * Ссылка, созданная в текущей эпохе видимости, не видна ни одному читателю и удаляется на месте.
+     * Шаги создания ссылок в таблице не убывают, поэтому все последующие ссылки тоже не видны читателям:
+     * они сдвигаются на один слот (с сохранением порядка), а последний занятый слот освобождается.
+     */
+    private void removeUnpublishedInvertedSuffixLink(long[] table, int slotPos) {
+        int followingLastSlotPos = invertedSuffixLinkSlotCount * INVERTED_SUFFIX_LINK_SLOT_SIZE;
+        int lastSlotPos = followingLastSlotPos - INVERTED_SUFFIX_LINK_SLOT_SIZE;
+
+        System.arraycopy(table, slotPos + INVERTED_SUFFIX_LINK_SLOT_SIZE, table, slotPos, lastSlotPos - slotPos);
+        table[lastSlotPos + CREATION_BUILD_STEP_OFFSET] = FREE_SLOT_CREATION_BUILD_STEP;
+        --invertedSuffixLinkSlotCount;
+    }
+
+    @Override
+    public void enqueueActualInvertedSuffixLinksTo(StateIdQueue queue, long automationBuildStep) {
+        long[] table = invertedSuffixLinkTable;
 
-        if (minParallelToReadBuildStep == LESS_THAN_MIN_BUILDING_STEP) {
-            minParallelToReadBuildStep = currentAutomationBuildStep - 1;
+        if (table == null) {
+            return;
         }
 
-        return minParallelToReadBuildStep;
+        for (int slotPos = 0; slotPos < table.length && table[slotPos + CREATION_BUILD_STEP_OFFSET] != FREE_SLOT_CREATION_BUILD_STEP; slotPos += INVERTED_SUFFIX_LINK_SLOT_SIZE) {
+            if (isActualVersion(table, slotPos, automationBuildStep)) {
+                queue.enqueue(table[slotPos + SOURCE_STATE_ID_OFFSET]);
+            }
+        }
     }
 
     @Override
-    public Iterator<Integer> getActualInvertedSuffixLinksIterator(int automationBuildStep) {
-        return new ActualInvertedSuffixLinksIterator(automationBuildStep);
+    public int getActualInvertedSuffixLinkCount(long automationBuildStep) {
+        return copyActualInvertedSuffixLinksTo(null, 0L, automationBuildStep);
     }
 
     @Override
-    public int getActualInvertedSuffixLinkCount(int automationBuildStep) {
+    public int copyActualInvertedSuffixLinksTo(SegmentedLongArray sourceStateIds, long firstPos, long automationBuildStep) {
+        long[] table = invertedSuffixLinkTable;
         int actualInvertedSuffixLinkCount = 0;
 
-        for (OrderedIntPair invertedSuffixLink : invertedSuffixLinks.keySet()) {
-            if (isActualInvertedSuffixLink(invertedSuffixLink, automationBuildStep)) {
+        if (table == null) {
+            return actualInvertedSuffixLinkCount;
+        }
+
+        for (int slotPos = 0; slotPos < table.length && table[slotPos + CREATION_BUILD_STEP_OFFSET] != FREE_SLOT_CREATION_BUILD_STEP; slotPos += INVERTED_SUFFIX_LINK_SLOT_SIZE) {
+            if (isActualVersion(table, slotPos, automationBuildStep)) {
+                if (sourceStateIds != null) {
+                    sourceStateIds.set(firstPos + actualInvertedSuffixLinkCount, table[slotPos + SOURCE_STATE_ID_OFFSET]);
+                }
+
                 ++actualInvertedSuffixLinkCount;
             }
         }
@@ -105,76 +144,129 @@ final class BuildingTimeState implements State {
         return actualInvertedSuffixLinkCount;
     }
 
+    /* ***** Переходы. ***** */
+
     @Override
-    public boolean hasActualTransition(char transitionChar, int automationBuildStep) {
+    public boolean hasActualTransition(char transitionChar, long automationBuildStep) {
         return getActualTransitionTargetStateId(transitionChar, automationBuildStep) != NO_STATE_ID;
     }
 
     @Override
-    public void addTransition(char transitionChar, int targetStateId, int currentAutomationBuildStep) {
-        transitions.put(
-            new OrderedCharIntPair(transitionChar, currentAutomationBuildStep),
-            new BuildingTimeTransition(targetStateId, GREATER_THAN_MAX_BUILDING_STEP));
+    public void addTransition(char transitionChar, long targetStateId, long currentAutomationBuildStep) {
+        long[] table = transitionTable;
+
+        if (table == null || !hasFreeTransitionSlot(table)) {
+            table = makeTransitionTableWithFreeSlot(table, currentAutomationBuildStep);
+            putTransition(table, transitionChar, targetStateId, currentAutomationBuildStep);
+            transitionTable = table;
+        }
+        else {
+            putTransition(table, transitionChar, targetStateId, currentAutomationBuildStep);
+        }
     }
 
+    /**
+     * Версия, созданная после последнего опубликованного шага построения (в текущей эпохе видимости), не видна ни одному читателю
+     * и перезаписывается на месте.
+     */
     @Override
-    public void redirectTransition(char transitionChar, int newTargetStateId, int currentAutomationBuildStep) {
+    public void redirectTransition(char transitionChar, long newTargetStateId, long currentAutomationBuildStep) {
+        long[] table = transitionTable;
+
+        if (table != null) {
+            int slotPos = findTransitionSlotPos(table, transitionChar, GREATER_THAN_MAX_BUILDING_STEP - 1);
+
+            if (slotPos != NO_SLOT_POS && table[slotPos + CREATION_BUILD_STEP_OFFSET] > parallelToBuildReadInfo.lastPublishedBuildStep) {
+                table[slotPos + TRANSITION_OFFSET] = newTargetStateId << Character.SIZE | transitionChar;
+                return;
+            }
+        }
+
         removeTransition(transitionChar, currentAutomationBuildStep);
         addTransition(transitionChar, newTargetStateId, currentAutomationBuildStep);
     }
 
-    private void removeTransition(char transitionChar, int currentAutomationBuildStep) {
-        Map<OrderedCharIntPair, BuildingTimeTransition> removingTransitions = getAllTransitions(transitionChar);
-        int minParallelToReadBuildStep = getMinParallelToReadingBuildingStep(currentAutomationBuildStep);
+    private void removeTransition(char transitionChar, long currentAutomationBuildStep) {
+        long[] table = transitionTable;
 
-        for (OrderedCharIntPair removingTransition : removingTransitions.keySet()) {
-            if (currentAutomationBuildStep > 0 && !isActualTransition(removingTransition, minParallelToReadBuildStep)) {
-                transitions.remove(removingTransition);
-            }
-            else if (isActualTransition(removingTransition, currentAutomationBuildStep)) {
-                transitions.replace(
-                    removingTransition,
-                    new BuildingTimeTransition(
-                            removingTransitions.get(removingTransition).targetStateId,
-                            currentAutomationBuildStep));
-            }
+        if (table == null) {
+            return;
         }
-    }
 
-    private ConcurrentNavigableMap<OrderedCharIntPair, BuildingTimeTransition> getAllTransitions(char transitionChar) {
-        return
-            transitions.subMap(
-                new OrderedCharIntPair(transitionChar, LESS_THAN_MIN_BUILDING_STEP),
-                new OrderedCharIntPair(transitionChar, GREATER_THAN_MAX_BUILDING_STEP + 1));
+        int slotPos = findTransitionSlotPos(table, transitionChar, GREATER_THAN_MAX_BUILDING_STEP - 1);
+
+        if (slotPos != NO_SLOT_POS) {
+            table[slotPos + FIRST_IRRELEVANT_BUILD_STEP_OFFSET] = currentAutomationBuildStep;
+            ++deadTransitionVersionCount;
+            ++parallelToBuildReadInfo.retainedDeadVersionCount;
+        }
     }
 
     @Override
-    public int getActualTransitionTargetStateId(char transitionChar, int automationBuildStep) {
-        for (OrderedCharIntPair inputCharTransition : getAllTransitions(transitionChar).keySet()) {
-            if (isActualTransition(inputCharTransition, automationBuildStep)) {
-                return transitions.get(inputCharTransition).targetStateId;
-            }
-        }
+    public long getActualTransitionTargetStateId(char transitionChar, long automationBuildStep) {
+        long[] table = transitionTable;
 
-        return NO_STATE_ID;
-    }
+        if (table == null) {
+            return NO_STATE_ID;
+        }
 
-    private boolean isActualTransition(OrderedCharIntPair transition, int automationBuildStep) {
-        int firstIrrelevantAutomationBuildStep = transitions.get(transition).firstIrrelevantBuildStep;
-        return automationBuildStep >= transition.right && automationBuildStep < firstIrrelevantAutomationBuildStep;
+        int slotPos = findTransitionSlotPos(table, transitionChar, automationBuildStep);
+        return slotPos != NO_SLOT_POS ? getTargetStateId(table, slotPos) : NO_STATE_ID;
     }
 
     @Override
-    public ActualTransitionsIterator getActualTransitionsIterator(int automationBuildStep) {
-        return new ActualTransitionsIterator(automationBuildStep);
+    public void copyActualTransitionsTo(State targetState, long currentAutomationBuildStep) {
+        long[] table = transitionTable;
+
+        if (table == null) {
+            return;
+        }
+
+        for (int slotPos = 0; slotPos < table.length; slotPos += TRANSITION_SLOT_SIZE) {
+            if (isActualVersion(table, slotPos, currentAutomationBuildStep)) {
+                targetState.addTransition(
+                    getTransitionChar(table, slotPos),
+                    getTargetStateId(table, slotPos),
+                    currentAutomationBuildStep);
+            }
+        }
     }
 
+    /**
+     * Переходы записываются в порядке возрастания их символов.
+     */
     @Override
-    public int getActualTransitionCount(int automationBuildStep) {
+    public int copyActualTransitionsTo(
+        SegmentedSymbolArray transitionSymbols,
+        SegmentedLongArray targetStateIds,
+        long firstPos,
+        long automationBuildStep,
+        Alphabet alphabet) {
+
+        long[] table = transitionTable;
         int actualTransitionCount = 0;
 
-        for (OrderedCharIntPair transition : transitions.keySet()) {
-            if (isActualTransition(transition, automationBuildStep)) {
+        if (table == null) {
+            return actualTransitionCount;
+        }
+
+        for (int slotPos = 0; slotPos < table.length; slotPos += TRANSITION_SLOT_SIZE) {
+            if (isActualVersion(table, slotPos, automationBuildStep)) {
+                if (transitionSymbols != null) {
+                    // Сортировка вставками: количество переходов состояния не превышает размер алфавита и, как правило, невелико.
+                    int transitionSymbol = alphabet.getSymbol(getTransitionChar(table, slotPos));
+                    long pos = firstPos + actualTransitionCount;
+
+                    while (pos > firstPos && transitionSymbols.get(pos - 1L) > transitionSymbol) {
+                        transitionSymbols.set(pos, transitionSymbols.get(pos - 1L));
+                        targetStateIds.set(pos, targetStateIds.get(pos - 1L));
+                        --pos;
+                    }
+
+                    transitionSymbols.set(pos, transitionSymbol);
+                    targetStateIds.set(pos, getTargetStateId(table, slotPos));
+                }
+
                 ++actualTransitionCount;
             }
         }
@@ -183,157 +275,347 @@ final class BuildingTimeState implements State {
     }
 
     @Override
-    public boolean isClone() {
-        return clone;
+    public int getActualTransitionCount(long automationBuildStep) {
+        return copyActualTransitionsTo(null, null, 0L, automationBuildStep, null);
+    }
+
+    /* ***** Мертвые версии. ***** */
+
+    @Override
+    public int getDeadVersionCount() {
+        return deadTransitionVersionCount + deadInvertedSuffixLinkVersionCount;
+    }
+
+    /* ***** Потребление памяти. ***** */
+
+    @Override
+    public long getMemoryInBytes() {
+        return OBJECT_MEMORY_IN_BYTES + getMemoryInBytes(invertedSuffixLinkTable) + getMemoryInBytes(transitionTable);
     }
 
     /**
-     *  Итератор по обратным суффиксным ссылкам, которые являются актуальными для данного шага построения суффиксного автомата.
+     * Переносит в новую таблицу таблицу переходов и (или) таблицу обратных суффиксных ссылок,
+     * если в них есть мертвые версии, которые уже не видны ни одному читателю.
      */
-    private final class ActualInvertedSuffixLinksIterator implements Iterator<Integer> {
+    @Override
+    public boolean sweepDeadVersions(long currentAutomationBuildStep) {
+        if (deadTransitionVersionCount > 0 || deadInvertedSuffixLinkVersionCount > 0) {
+            long firstIrrelevantForAllReadersBuildStep = getFirstIrrelevantForAllReadersBuildStep(currentAutomationBuildStep);
 
-        private ActualInvertedSuffixLinksIterator(int automationBuildStep) {
-            this.automationBuildStep = automationBuildStep;
-            this.invertedSuffixLinksIter = invertedSuffixLinks.keySet().iterator();
-            findNext();
-        }
+            if (deadTransitionVersionCount > 0 && hasRemovableVersion(transitionTable, TRANSITION_SLOT_SIZE, firstIrrelevantForAllReadersBuildStep)) {
+                transitionTable = makeTransitionTableWithFreeSlot(transitionTable, currentAutomationBuildStep);
+            }
 
-        @Override
-        public boolean hasNext() {
-            return nextActualInvertedSuffixLink != null;
+            if (deadInvertedSuffixLinkVersionCount > 0 && hasRemovableVersion(invertedSuffixLinkTable, INVERTED_SUFFIX_LINK_SLOT_SIZE, firstIrrelevantForAllReadersBuildStep)) {
+                invertedSuffixLinkTable = makeInvertedSuffixLinkTableWithFreeSlot(invertedSuffixLinkTable, currentAutomationBuildStep);
+            }
         }
 
-        @Override
-        public Integer next() {
-            if (nextActualInvertedSuffixLink != null) {
-                Integer currentActualInvertedSuffixLink = nextActualInvertedSuffixLink;
-                findNext();
-                return currentActualInvertedSuffixLink;
-            }
-            else {
-                return null;
+        return getDeadVersionCount() > 0;
+    }
+
+    // ****************************** //
+
+    /* ***** Общая структура слотов таблиц версий. ***** */
+
+    // Шаг построения суффиксного автомата, на котором версия была создана.
+    private static final int CREATION_BUILD_STEP_OFFSET = 0;
+
+    // Шаг построения суффиксного автомата, начиная с которого читатель суффиксного автомата должен считать версию недействительной.
+    private static final int FIRST_IRRELEVANT_BUILD_STEP_OFFSET = 1;
+
+    private static final long FREE_SLOT_CREATION_BUILD_STEP = 0L;
+    private static final int NO_SLOT_POS = -1;
+
+    /* ***** Таблица обратных суффиксных ссылок. ***** */
+
+    // Состояние-источник соответствующей прямой суффиксной ссылки.
+    private static final int SOURCE_STATE_ID_OFFSET = 2;
+    private static final int INVERTED_SUFFIX_LINK_SLOT_SIZE = 3;
+    private static final int INITIAL_INVERTED_SUFFIX_LINK_SLOT_COUNT = 2;
+
+    /* ***** Таблица переходов. ***** */
+
+    // Состояние-цель, в которое осуществляется переход (старшие разряды), и символ, соответствующий переходу (младшие 16 разрядов).
+    private static final int TRANSITION_OFFSET = 2;
+    private static final int TRANSITION_SLOT_SIZE = 3;
+
+    private static final int INITIAL_TRANSITION_SLOT_COUNT = 2;
+
+    // Максимальная емкость (в слотах) последовательно заполняемой таблицы переходов.
+    // Таблицы большей емкости используют открытую адресацию.
+    private static final int MAX_SEQUENTIAL_TRANSITION_SLOT_COUNT = 8;
+    private static final int MIN_HASHED_TRANSITION_SLOT_COUNT = 32;
+
+    // ****************************** //
+
+    // Оценки для 64-разрядной JVM со сжатыми указателями.
+    private static final long OBJECT_MEMORY_IN_BYTES = 40L;
+    private static final long ARRAY_HEADER_MEMORY_IN_BYTES = 16L;
+
+    private static long getMemoryInBytes(long[] table) {
+        return table != null ? ARRAY_HEADER_MEMORY_IN_BYTES + (long)table.length * Long.SIZE / Byte.SIZE : 0L;
+    }
+
+    private static boolean isActualVersion(long[] table, int slotPos, long automationBuildStep) {
+        return
+            automationBuildStep >= table[slotPos + CREATION_BUILD_STEP_OFFSET] &&
+            automationBuildStep < table[slotPos + FIRST_IRRELEVANT_BUILD_STEP_OFFSET];
+    }
+
+    private static boolean isDeadVersion(long[] table, int slotPos) {
+        return
+            table[slotPos + CREATION_BUILD_STEP_OFFSET] != FREE_SLOT_CREATION_BUILD_STEP &&
+            table[slotPos + FIRST_IRRELEVANT_BUILD_STEP_OFFSET] != GREATER_THAN_MAX_BUILDING_STEP;
+    }
+
+    private static boolean hasRemovableVersion(long[] table, int slotSize, long firstIrrelevantForAllReadersBuildStep) {
+        for (int slotPos = 0; slotPos < table.length; slotPos += slotSize) {
+            if (isDeadVersion(table, slotPos) && !isRetainedVersion(table, slotPos, firstIrrelevantForAllReadersBuildStep)) {
+                return true;
             }
         }
 
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException("Not supported");
-        }
+        return false;
+    }
 
-        // ****************************** //
+    private static char getTransitionChar(long[] table, int slotPos) {
+        return (char)table[slotPos + TRANSITION_OFFSET];
+    }
 
-        private void findNext() {
-            while (invertedSuffixLinksIter.hasNext()) {
-                OrderedIntPair invertedSuffixLink = invertedSuffixLinksIter.next();
+    private static long getTargetStateId(long[] table, int slotPos) {
+        return table[slotPos + TRANSITION_OFFSET] >>> Character.SIZE;
+    }
 
-                if (isActualInvertedSuffixLink(invertedSuffixLink, automationBuildStep)) {
-                    nextActualInvertedSuffixLink = invertedSuffixLink.left;
-                    return;
+    private static boolean isHashedTransitionTable(long[] table) {
+        return table.length > MAX_SEQUENTIAL_TRANSITION_SLOT_COUNT * TRANSITION_SLOT_SIZE;
+    }
+
+    private static int getTransitionSlotPosHash(long[] table, char transitionChar) {
+        int hash = transitionChar * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & (table.length / TRANSITION_SLOT_SIZE - 1)) * TRANSITION_SLOT_SIZE;
+    }
+
+    /**
+     * @return позицию слота, содержащего версию перехода по символу transitionChar, актуальную для шага построения automationBuildStep,
+     *         или NO_SLOT_POS, если такой версии нет.
+     */
+    private static int findTransitionSlotPos(long[] table, char transitionChar, long automationBuildStep) {
+        if (isHashedTransitionTable(table)) {
+            for (int slotPos = getTransitionSlotPosHash(table, transitionChar);
+                 table[slotPos + CREATION_BUILD_STEP_OFFSET] != FREE_SLOT_CREATION_BUILD_STEP;
+                 slotPos = (slotPos + TRANSITION_SLOT_SIZE) % table.length) {
+
+                if (getTransitionChar(table, slotPos) == transitionChar && isActualVersion(table, slotPos, automationBuildStep)) {
+                    return slotPos;
                 }
             }
+        }
+        else {
+            for (int slotPos = 0;
+                 slotPos < table.length && table[slotPos + CREATION_BUILD_STEP_OFFSET] != FREE_SLOT_CREATION_BUILD_STEP;
+                 slotPos += TRANSITION_SLOT_SIZE) {
 
-            nextActualInvertedSuffixLink = null;
+                if (getTransitionChar(table, slotPos) == transitionChar && isActualVersion(table, slotPos, automationBuildStep)) {
+                    return slotPos;
+                }
+            }
         }
 
-        // ****************************** //
+        return NO_SLOT_POS;
+    }
 
-        private final int automationBuildStep;
-        private final Iterator<OrderedIntPair> invertedSuffixLinksIter;
-        private Integer nextActualInvertedSuffixLink;
+    /**
+     * Шаг создания записывается последним: до его записи слот считается свободным.
+     * Порядок записи, тем не менее, не важен для читателей, поскольку версии текущего шага построения им в любом случае не видны.
+     */
+    private static void writeTransition(long[] table, int slotPos, char transitionChar, long targetStateId, long creationBuildStep, long firstIrrelevantBuildStep) {
+        table[slotPos + TRANSITION_OFFSET] = targetStateId << Character.SIZE | transitionChar;
+        table[slotPos + FIRST_IRRELEVANT_BUILD_STEP_OFFSET] = firstIrrelevantBuildStep;
+        table[slotPos + CREATION_BUILD_STEP_OFFSET] = creationBuildStep;
     }
 
-    private boolean isActualInvertedSuffixLink(OrderedIntPair invertedSuffixLink, int automationBuildStep) {
-        int firstIrrelevantAutomationBuildStep = invertedSuffixLinks.get(invertedSuffixLink);
-        return automationBuildStep >= invertedSuffixLink.right && automationBuildStep < firstIrrelevantAutomationBuildStep;
+    private static void writeInvertedSuffixLink(long[] table, int slotIndex, long sourceStateId, long currentAutomationBuildStep) {
+        int slotPos = slotIndex * INVERTED_SUFFIX_LINK_SLOT_SIZE;
+        table[slotPos + SOURCE_STATE_ID_OFFSET] = sourceStateId;
+        table[slotPos + FIRST_IRRELEVANT_BUILD_STEP_OFFSET] = GREATER_THAN_MAX_BUILDING_STEP;
+        table[slotPos + CREATION_BUILD_STEP_OFFSET] = currentAutomationBuildStep;
     }
 
-    /**
-     *  Итератор по переходам, которые являются актуальными для данного шага построения суффиксного автомата.
-     */
-    private final class ActualTransitionsIterator implements Iterator<OrderedCharIntPair> {
+    private boolean hasFreeTransitionSlot(long[] table) {
+        int slotCapacity = table.length / TRANSITION_SLOT_SIZE;
 
-        private ActualTransitionsIterator(int automationBuildStep) {
-            this.automationBuildStep = automationBuildStep;
-            this.transitionsIter = transitions.keySet().iterator();
-            findNext();
-        }
+        return
+            isHashedTransitionTable(table) ?
+            (transitionSlotCount + 1) * 2 <= slotCapacity :
+            transitionSlotCount < slotCapacity;
+    }
 
-        @Override
-        public boolean hasNext() {
-            return nextActualTransition != null;
-        }
+    private void putTransition(long[] table, char transitionChar, long targetStateId, long currentAutomationBuildStep) {
+        putTransition(table, transitionChar, targetStateId, currentAutomationBuildStep, GREATER_THAN_MAX_BUILDING_STEP);
+    }
+
+    private void putTransition(long[] table, char transitionChar, long targetStateId, long creationBuildStep, long firstIrrelevantBuildStep) {
+        int slotPos;
 
-        @Override
-        public OrderedCharIntPair next() {
-            if (nextActualTransition != null) {
-                OrderedCharIntPair currentActualTransition = nextActualTransition;
-                findNext();
-                return currentActualTransition;
+        if (isHashedTransitionTable(table)) {
+            slotPos = getTransitionSlotPosHash(table, transitionChar);
+
+            while (table[slotPos + CREATION_BUILD_STEP_OFFSET] != FREE_SLOT_CREATION_BUILD_STEP) {
+                slotPos = (slotPos + TRANSITION_SLOT_SIZE) % table.length;
             }
-            else {
-                return null;
+        }
+        else {
+            slotPos = transitionSlotCount * TRANSITION_SLOT_SIZE;
+        }
+
+        writeTransition(table, slotPos, transitionChar, targetStateId, creationBuildStep, firstIrrelevantBuildStep);
+        ++transitionSlotCount;
+    }
+
+    /**
+     * Создает новую таблицу переходов, в которой есть место как минимум для одной новой версии,
+     * и переносит в нее все версии, которые еще могут быть видны читателям.
+     * Новая таблица не публикуется.
+     */
+    private long[] makeTransitionTableWithFreeSlot(long[] table, long currentAutomationBuildStep) {
+        long firstIrrelevantForAllReadersBuildStep = getFirstIrrelevantForAllReadersBuildStep(currentAutomationBuildStep);
+        int retainedVersionCount = 0;
+        int retainedDeadVersionCount = 0;
+
+        if (table != null) {
+            for (int slotPos = 0; slotPos < table.length; slotPos += TRANSITION_SLOT_SIZE) {
+                if (isRetainedVersion(table, slotPos, firstIrrelevantForAllReadersBuildStep)) {
+                    ++retainedVersionCount;
+
+                    if (isDeadVersion(table, slotPos)) {
+                        ++retainedDeadVersionCount;
+                    }
+                }
             }
         }
 
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException("Not supported");
+        int requiredSlotCount = retainedVersionCount + 1;
+        int newSlotCapacity =
+            requiredSlotCount <= MAX_SEQUENTIAL_TRANSITION_SLOT_COUNT ?
+            max(INITIAL_TRANSITION_SLOT_COUNT, ceilPowerOfTwo(requiredSlotCount)) :
+            max(MIN_HASHED_TRANSITION_SLOT_COUNT, ceilPowerOfTwo(requiredSlotCount * 2));
+
+        // Однажды ставшая хешированной таблица остается таковой.
+        if (table != null && isHashedTransitionTable(table)) {
+            newSlotCapacity = max(newSlotCapacity, MIN_HASHED_TRANSITION_SLOT_COUNT);
+        }
+
+        long[] newTable = new long[newSlotCapacity * TRANSITION_SLOT_SIZE];
+        transitionSlotCount = 0;
+
+        if (table != null) {
+            for (int slotPos = 0; slotPos < table.length; slotPos += TRANSITION_SLOT_SIZE) {
+                if (isRetainedVersion(table, slotPos, firstIrrelevantForAllReadersBuildStep)) {
+                    putTransition(
+                        newTable,
+                        getTransitionChar(table, slotPos),
+                        getTargetStateId(table, slotPos),
+                        table[slotPos + CREATION_BUILD_STEP_OFFSET],
+                        table[slotPos + FIRST_IRRELEVANT_BUILD_STEP_OFFSET]);
+                }
+            }
         }
 
-        // ****************************** //
+        parallelToBuildReadInfo.retainedDeadVersionCount += retainedDeadVersionCount - deadTransitionVersionCount;
+        deadTransitionVersionCount = retainedDeadVersionCount;
 
-        private void findNext() {
-            while (transitionsIter.hasNext()) {
-                OrderedCharIntPair transition = transitionsIter.next();
+        return newTable;
+    }
 
-                if (isActualTransition(transition, automationBuildStep)) {
-                    nextActualTransition = new OrderedCharIntPair(transition.left, transitions.get(transition).targetStateId);
-                    return;
+    /**
+     * Создает новую таблицу обратных суффиксных ссылок, в которой есть место как минимум для одной новой версии,
+     * и переносит в нее (с сохранением порядка) все версии, которые еще могут быть видны читателям.
+     * Новая таблица не публикуется.
+     */
+    private long[] makeInvertedSuffixLinkTableWithFreeSlot(long[] table, long currentAutomationBuildStep) {
+        long firstIrrelevantForAllReadersBuildStep = getFirstIrrelevantForAllReadersBuildStep(currentAutomationBuildStep);
+        int retainedVersionCount = 0;
+        int retainedDeadVersionCount = 0;
+
+        if (table != null) {
+            for (int slotPos = 0; slotPos < table.length; slotPos += INVERTED_SUFFIX_LINK_SLOT_SIZE) {
+                if (isRetainedVersion(table, slotPos, firstIrrelevantForAllReadersBuildStep)) {
+                    ++retainedVersionCount;
+
+                    if (isDeadVersion(table, slotPos)) {
+                        ++retainedDeadVersionCount;
+                    }
                 }
             }
+        }
+
+        int newSlotCapacity = max(INITIAL_INVERTED_SUFFIX_LINK_SLOT_COUNT, ceilPowerOfTwo(retainedVersionCount + 1));
+        long[] newTable = new long[newSlotCapacity * INVERTED_SUFFIX_LINK_SLOT_SIZE];
+        int newSlotPos = 0;
 
-            nextActualTransition = null;
+        if (table != null) {
+            for (int slotPos = 0; slotPos < table.length; slotPos += INVERTED_SUFFIX_LINK_SLOT_SIZE) {
+                if (isRetainedVersion(table, slotPos, firstIrrelevantForAllReadersBuildStep)) {
+                    System.arraycopy(table, slotPos, newTable, newSlotPos, INVERTED_SUFFIX_LINK_SLOT_SIZE);
+                    newSlotPos += INVERTED_SUFFIX_LINK_SLOT_SIZE;
+                }
+            }
         }
 
-        // ****************************** //
+        invertedSuffixLinkSlotCount = newSlotPos / INVERTED_SUFFIX_LINK_SLOT_SIZE;
+
+        parallelToBuildReadInfo.retainedDeadVersionCount += retainedDeadVersionCount - deadInvertedSuffixLinkVersionCount;
+        deadInvertedSuffixLinkVersionCount = retainedDeadVersionCount;
+
+        return newTable;
+    }
+
+    /**
+     * Версия должна быть сохранена, если она еще может быть видна хотя бы одному читателю (текущему или будущему).
+     */
+    private static boolean isRetainedVersion(long[] table, int slotPos, long firstIrrelevantForAllReadersBuildStep) {
+        return
+            table[slotPos + CREATION_BUILD_STEP_OFFSET] != FREE_SLOT_CREATION_BUILD_STEP &&
+            table[slotPos + FIRST_IRRELEVANT_BUILD_STEP_OFFSET] > firstIrrelevantForAllReadersBuildStep;
+    }
+
+    /**
+     * @return такой шаг построения суффиксного автомата, что ни один из читателей не видит суффиксный автомат по состоянию на более ранний шаг.
+     *         Версия, которая недействительна начиная с этого шага или ранее, не видна ни одному читателю.
+     */
+    private long getFirstIrrelevantForAllReadersBuildStep(long currentAutomationBuildStep) {
+        return parallelToBuildReadInfo.getFirstIrrelevantForAllReadersBuildStep(currentAutomationBuildStep);
+    }
 
-        private final int automationBuildStep;
-        private final Iterator<OrderedCharIntPair> transitionsIter;
-        private OrderedCharIntPair nextActualTransition;
+    private static int ceilPowerOfTwo(int value) {
+        int highestOneBit = highestOneBit(value);
+        return highestOneBit == value ? value : highestOneBit << 1;
     }
 
     // ****************************** //
 
-    // Наибольшая длина подстроки,
-    // принадлежащей классу эквивалентности множеств позиций окончаний подстрок,
-    // соответствующему данному состоянию суффиксного автомата.
-    private final int greatestSubstringLength;
-
-    // Минимальная позиция окончания подстроки,
-    // принадлежащей классу эквивалентности множеств позиций окончаний подстрок,
-    // соответствующему данному состоянию суффиксного автомата.
-    private final int minSubstringEndPos;
-
-    // Суффиксная ссылка.
-    private int suffixLink;
-
-    // Сопоставление паре
-    //     (состояние-источник соответствующей прямой суффиксной ссылки;
-    //      шаг построения суффиксного автомата, на котором обратная суффиксная ссылка была создана)
-    // шага построения суффиксного автомата, начиная с которого читатель суффиксного автомата
-    // должен считать обратную суффиксную ссылку недействительной.
-    private final ConcurrentSkipListMap<OrderedIntPair, Integer> invertedSuffixLinks = new ConcurrentSkipListMap<>();
-
-    // Сопоставление паре
-    //     (символ, соответствующий переходу;
-    //      шаг построения суффиксного автомата, на котором переход был создан)
-    // пары
-    //     (состояние-цель, в которое осуществляется переход;
-    //      шаг построения суффиксного автомата, начиная с которого читатель суффиксного автомата должен считать переход недействительным).
-    private final ConcurrentSkipListMap<OrderedCharIntPair, BuildingTimeTransition> transitions = new ConcurrentSkipListMap<>();
-
-    // Истина в том и только в том случае, если данное состояние является клоном (см. SuffixAutomation) другого.
-    private final boolean clone;
+    // Таблица версий обратных суффиксных ссылок. Слот:
+    //     (шаг построения суффиксного автомата, на котором обратная суффиксная ссылка была создана;
+    //      шаг построения суффиксного автомата, начиная с которого читатель суффиксного автомата должен считать обратную суффиксную ссылку недействительной;
+    //      состояние-источник соответствующей прямой суффиксной ссылки).
+    private volatile long[] invertedSuffixLinkTable;
+
+    // Количество занятых слотов таблицы обратных суффиксных ссылок (используется только писателем).
+    private int invertedSuffixLinkSlotCount;
+
+    // Таблица версий переходов. Слот:
+    //     (шаг построения суффиксного автомата, на котором переход был создан;
+    //      шаг построения суффиксного автомата, начиная с которого читатель суффиксного автомата должен считать переход недействительным;
+    //      состояние-цель, в которое осуществляется переход, и символ, соответствующий переходу).
+    private volatile long[] transitionTable;
+
+    // Количество занятых слотов таблицы переходов (используется только писателем).
+    private int transitionSlotCount;
+
+    // Количества мертвых версий в таблицах переходов и обратных суффиксных ссылок (используются только писателем).
+    private int deadTransitionVersionCount;
+    private int deadInvertedSuffixLinkVersionCount;
 
     // Информация о чтениях суффиксного автомата, параллельных его построению.
     private final ParallelToBuildingReadingInfo parallelToBuildReadInfo;
@@ -0,0 +1,156 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import static java.lang.Math.max;
+import static java.util.Arrays.copyOf;
+import net.devromik.textFileIndexer.utils.*;
+
+/**
+ * Скалярные атрибуты состояний времени построения (наибольшая длина подстроки, наименьшая позиция окончания подстроки,
+ * суффиксная ссылка, признак клона), хранимые в параллельных массивах примитивов, индексируемых идентификатором состояния.
+ * Объекты BuildingTimeState хранят только версионируемые переходы и обратные суффиксные ссылки.
+ *
+ * Массивы состоят из сегментов по 2^SEGMENT_LENGTH_LOG элементов: рост добавляет сегменты и не копирует записанные элементы.
+ * Признаки клонов хранятся по 64 в одном элементе.
+ *
+ * Схема синхронизации (один писатель, много читателей):
+ *     - атрибуты пишет (и растит массивы) только поток построения.
+ *     - атрибуты состояния записываются до публикации состояния в наборе состояний (SegmentedAtomicReferenceArray, volatile-запись),
+ *       поэтому читатель, получивший состояние из набора, видит и его атрибуты.
+ *     - читателям нужны только наименьшая позиция окончания подстроки и признак клона, которые после записи не изменяются.
+ *       Наибольшая длина подстроки и суффиксная ссылка используются только писателем.
+ *
+ * @author Shulnyaev Roman
+ */
+final class BuildingTimeStateAttributes {
+
+    /**
+     * Добавляет сегменты так, чтобы атрибуты могли быть записаны для состояний [0, minCapacity).
+     *
+     * @throws java.lang.IllegalArgumentException если minCapacity < 0.
+     */
+    void ensureCapacity(long minCapacity) {
+        PreconditionUtils.checkArgument(minCapacity >= 0L);
+
+        if (minCapacity <= (long)segmentCount << SEGMENT_LENGTH_LOG) {
+            return;
+        }
+
+        long requiredSegmentCount = ((minCapacity - 1L) >>> SEGMENT_LENGTH_LOG) + 1L;
+        PreconditionUtils.checkArgument(requiredSegmentCount <= ArrayUtils.MAX_ACCEPTABLE_ARRAY_LENGTH);
+
+        if (requiredSegmentCount > greatestSubstringLengthSegments.length) {
+            reserveSegments(
+                max(
+                    requiredSegmentCount,
+                    greatestSubstringLengthSegments.length + max(greatestSubstringLengthSegments.length >> 1, MIN_SEGMENT_CAPACITY_INCREASING_WHILE_GROWING)));
+        }
+
+        // Новые сегменты записываются в еще не используемые ячейки каталогов.
+        long[][] grownGreatestSubstringLengthSegments = greatestSubstringLengthSegments;
+        long[][] grownMinSubstringEndPosSegments = minSubstringEndPosSegments;
+        long[][] grownSuffixLinkSegments = suffixLinkSegments;
+        long[][] grownCloneBitSegments = cloneBitSegments;
+
+        while (segmentCount < requiredSegmentCount) {
+            grownGreatestSubstringLengthSegments[segmentCount] = new long[SEGMENT_LENGTH];
+            grownMinSubstringEndPosSegments[segmentCount] = new long[SEGMENT_LENGTH];
+            grownSuffixLinkSegments[segmentCount] = new long[SEGMENT_LENGTH];
+            grownCloneBitSegments[segmentCount] = new long[SEGMENT_LENGTH / Long.SIZE];
+            ++segmentCount;
+        }
+
+        // Публикация новых сегментов (volatile-запись).
+        minSubstringEndPosSegments = grownMinSubstringEndPosSegments;
+        cloneBitSegments = grownCloneBitSegments;
+    }
+
+    /**
+     * Освобождает сегменты и резерв каталогов сверх необходимых для состояний [0, minCapacity).
+     *
+     * @throws java.lang.IllegalArgumentException если minCapacity < 0.
+     */
+    void trimToCapacity(long minCapacity) {
+        PreconditionUtils.checkArgument(minCapacity >= 0L);
+        long requiredSegmentCount = minCapacity > 0L ? ((minCapacity - 1L) >>> SEGMENT_LENGTH_LOG) + 1L : 0L;
+
+        if (requiredSegmentCount < greatestSubstringLengthSegments.length) {
+            segmentCount = (int)Math.min(segmentCount, requiredSegmentCount);
+            reserveSegments(requiredSegmentCount);
+        }
+    }
+
+    /**
+     * Записывает атрибуты нового состояния (до его публикации в наборе состояний).
+     * Суффиксная ссылка нового состояния - State.NO_STATE_ID.
+     */
+    void setAttributes(long stateId, long greatestSubstringLength, long minSubstringEndPos, boolean clone) {
+        int segmentIndex = (int)(stateId >>> SEGMENT_LENGTH_LOG);
+        int indexInSegment = (int)stateId & SEGMENT_INDEX_MASK;
+
+        greatestSubstringLengthSegments[segmentIndex][indexInSegment] = greatestSubstringLength;
+        minSubstringEndPosSegments[segmentIndex][indexInSegment] = minSubstringEndPos;
+        suffixLinkSegments[segmentIndex][indexInSegment] = State.NO_STATE_ID;
+
+        if (clone) {
+            cloneBitSegments[segmentIndex][indexInSegment >>> 6] |= 1L << indexInSegment;
+        }
+    }
+
+    long getGreatestSubstringLength(long stateId) {
+        return greatestSubstringLengthSegments[(int)(stateId >>> SEGMENT_LENGTH_LOG)][(int)stateId & SEGMENT_INDEX_MASK];
+    }
+
+    long getMinSubstringEndPos(long stateId) {
+        return minSubstringEndPosSegments[(int)(stateId >>> SEGMENT_LENGTH_LOG)][(int)stateId & SEGMENT_INDEX_MASK];
+    }
+
+    boolean isClone(long stateId) {
+        return (cloneBitSegments[(int)(stateId >>> SEGMENT_LENGTH_LOG)][((int)stateId & SEGMENT_INDEX_MASK) >>> 6] & (1L << stateId)) != 0L;
+    }
+
+    void setSuffixLink(long stateId, long targetStateId) {
+        suffixLinkSegments[(int)(stateId >>> SEGMENT_LENGTH_LOG)][(int)stateId & SEGMENT_INDEX_MASK] = targetStateId;
+    }
+
+    long getSuffixLink(long stateId) {
+        return suffixLinkSegments[(int)(stateId >>> SEGMENT_LENGTH_LOG)][(int)stateId & SEGMENT_INDEX_MASK];
+    }
+
+    /**
+     * @return количество байт, занимаемых выделенными сегментами.
+     */
+    long getMemoryInBytes() {
+        return (long)segmentCount * (3L * SEGMENT_LENGTH + SEGMENT_LENGTH / Long.SIZE) * Long.SIZE / Byte.SIZE;
+    }
+
+    // ****************************** //
+
+    static final int SEGMENT_LENGTH_LOG = 14;
+
+    // ****************************** //
+
+    private void reserveSegments(long segmentCapacity) {
+        int newSegmentCapacity = (int)Math.min(segmentCapacity, ArrayUtils.MAX_ACCEPTABLE_ARRAY_LENGTH);
+
+        // Публикуются после копирования: читатель видит либо старый, либо полностью сформированный каталог.
+        greatestSubstringLengthSegments = copyOf(greatestSubstringLengthSegments, newSegmentCapacity);
+        minSubstringEndPosSegments = copyOf(minSubstringEndPosSegments, newSegmentCapacity);
+        suffixLinkSegments = copyOf(suffixLinkSegments, newSegmentCapacity);
+        cloneBitSegments = copyOf(cloneBitSegments, newSegmentCapacity);
+    }
+
+    // ****************************** //
+
+    private static final int SEGMENT_LENGTH = 1 << SEGMENT_LENGTH_LOG;
+    private static final int SEGMENT_INDEX_MASK = SEGMENT_LENGTH - 1;
+    private static final int MIN_SEGMENT_CAPACITY_INCREASING_WHILE_GROWING = 8;
+
+    // Используются только писателем.
+    private long[][] greatestSubstringLengthSegments = new long[0][];
+    private long[][] suffixLinkSegments = new long[0][];
+    private int segmentCount;
+
+    // Используются писателем и читателями.
+    private volatile long[][] minSubstringEndPosSegments = new long[0][];
+    private volatile long[][] cloneBitSegments = new long[0][];
+}
@@ -0,0 +1,823 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.io.*;
+import java.util.Arrays;
+import net.devromik.textFileIndexer.OccurrencePosIterator;
+import net.devromik.textFileIndexer.impl.*;
+import net.devromik.textFileIndexer.utils.PreconditionUtils;
+import static java.lang.Math.*;
+import static net.devromik.textFileIndexer.Index.NO_OCCURRENCE_POS;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.State.NO_STATE_ID;
+
+/**
+ * Суффиксный автомат в окончательной (неизменяемой) форме.
+ * Содержит ту и только ту информацию, которая необходима для эффективного поиска всех вхождений заданной строки.
+ *
+ * Состояния не являются объектами: состояние с идентификатором stateId представлено элементами массивов с индексом stateId.
+ * Переходы и обратные суффиксные ссылки хранятся в формате CSR:
+ * переходы состояния stateId занимают позиции [transitionOffsets[stateId], transitionOffsets[stateId + 1]) массивов
+ * transitionSymbols (по возрастанию символов) и transitionTargetStateIds,
+ * обратные суффиксные ссылки - позиции [invertedSuffixLinkOffsets[stateId], invertedSuffixLinkOffsets[stateId + 1]) массива invertedSuffixLinks.
+ *
+ * Символы переходов хранятся как их номера в алфавите исходной строки (см. Alphabet):
+ * для алфавитов до 256 символов - по байту на переход. Символы искомой строки переводятся в номера однократно,
+ * и символ, не встречающийся в исходной строке, сразу означает отсутствие вхождений.
+ *
+ * Состояния с большим количеством переходов (прежде всего начальное состояние и близкие к нему, через которые проходит каждый поиск)
+ * дополнительно получают плотную таблицу переходов: строку массива denseTransitionTargetStateIds,
+ * индексируемую номером символа в алфавите. Поиск перехода в такой таблице не требует двоичного поиска.
+ *
+ * Для каждого состояния хранятся количество вхождений его подстрок (occurrenceCounts) -
+ * количество состояний, не являющихся клонами, в его поддереве дерева суффиксных ссылок -
+ * и наибольшая позиция окончания его подстрок (maxSubstringEndPositions) по этому поддереву.
+ * Наименьшая позиция окончания (minSubstringEndPositions) у клона та же, что у состояния, из которого он получен,
+ * поэтому совпадает с наименьшей по поддереву.
+ * Количество вхождений строки, а также ее первое и последнее вхождения находятся за время, пропорциональное ее длине.
+ *
+ * Позиции окончания подстрок состояний, не являющихся клонами, упорядочены в массиве occurrenceEndPositions
+ * в порядке обхода дерева суффиксных ссылок, при котором поддерево каждого состояния занимает непрерывный диапазон
+ * [occurrenceRangeStarts[stateId], occurrenceRangeStarts[stateId] + occurrenceCounts[stateId]).
+ * Перечисление вхождений строки - последовательный просмотр такого диапазона.
+ *
+ * Для перечисления вхождений в порядке возрастания позиций над occurrenceEndPositions построено дерево минимумов
+ * (occurrenceEndPositionMinTree): неявное двоичное дерево, листья которого - элементы occurrenceEndPositions,
+ * а внутренняя вершина v хранит минимум своих потомков 2v и 2v + 1.
+ * Диапазон поддерева состояния раскладывается на O(log n) вершин, которые сливаются с помощью двоичной кучи по их минимумам:
+ * очередная позиция находится за O(log n * log k), где k - количество уже перечисленных вхождений,
+ * и вхождения сверх запрошенных не просматриваются.
+ * Обратные суффиксные ссылки и признаки клонов нужны только для его построения и освобождаются при публикации.
+ *
+ * Массивы адресуются по long (см. SegmentedLongArray, SegmentedSymbolArray) и размещаются в куче или вне ее в зависимости от storage
+ * (см. DefinitiveSuffixAutomationStorage). Идентификаторы состояний и смещения хранятся как int, если их значения это позволяют.
+ *
+ * Заполняется потоками оптимизации после построения (непересекающимися диапазонами состояний)
+ * и публикуется читателям однократно - после заполнения.
+ */
+final class DefinitiveSuffixAutomation {
+
+    /**
+     * Выделяет массивы, длина которых определяется количеством состояний.
+     * Количества переходов и обратных суффиксных ссылок состояний задаются методом setStateCounts и заменяются смещениями методом computeOffsets,
+     * после чего массивы переходов и обратных суффиксных ссылок выделяются методом allocateTransitionsAndInvertedSuffixLinks.
+     *
+     * @param alphabet алфавит исходной строки (после Alphabet.compact).
+     * @param storageDirectory директория для файлов, отображаемых в память (если storage == MAPPED).
+     */
+    DefinitiveSuffixAutomation(
+        long stateCount,
+        Alphabet alphabet,
+        DefinitiveSuffixAutomationStorage storage,
+        File storageDirectory) throws IOException {
+
+        this.stateCount = stateCount;
+        this.alphabet = alphabet;
+        this.storage = storage;
+        this.storageDirectory = storageDirectory;
+
+        // Позиции окончаний подстрок меньше длины исходной строки, а значит, и количества состояний.
+        this.minSubstringEndPositions = new SegmentedLongArray(stateCount, stateCount, storage, storageDirectory);
+        this.cloneStateBits = new SegmentedLongArray((stateCount + Long.SIZE - 1L) / Long.SIZE, Long.MAX_VALUE, storage, storageDirectory);
+
+        // Количество обратных суффиксных ссылок меньше количества состояний,
+        // количество переходов - меньше утроенного количества состояний (3n - 4 переходов на n + 1 и более состояний).
+        this.invertedSuffixLinkOffsets = new SegmentedLongArray(stateCount + 1L, stateCount, storage, storageDirectory);
+        this.transitionOffsets = new SegmentedLongArray(stateCount + 1L, 3L * stateCount, storage, storageDirectory);
+    }
+
+    /**
+     * Задает количества актуальных обратных суффиксных ссылок и переходов состояния stateId.
+     * Может вызываться параллельно для разных состояний.
+     */
+    void setStateCounts(long stateId, int invertedSuffixLinkCount, int transitionCount) {
+        invertedSuffixLinkOffsets.set(stateId + 1L, invertedSuffixLinkCount);
+        transitionOffsets.set(stateId + 1L, transitionCount);
+    }
+
+    /**
+     * Заменяет количества обратных суффиксных ссылок и переходов состояний их префиксными суммами (смещениями)
+     * и отбирает кандидатов в плотные таблицы переходов.
+     * После этого известны размеры всех массивов (см. getRequiredMemoryInBytes).
+     */
+    void computeOffsets() {
+        invertedSuffixLinkCount = 0L;
+        transitionCount = 0L;
+
+        denseTransitionTableCandidateCount = 0;
+
+        for (long stateId = 0L; stateId < stateCount; ++stateId) {
+            invertedSuffixLinkCount += invertedSuffixLinkOffsets.get(stateId + 1L);
+            long stateTransitionCount = transitionOffsets.get(stateId + 1L);
+            transitionCount += stateTransitionCount;
+
+            if (stateTransitionCount >= MIN_DENSE_TRANSITION_TABLE_TRANSITION_COUNT) {
+                addDenseTransitionTableCandidate(stateId);
+            }
+
+            invertedSuffixLinkOffsets.set(stateId + 1L, invertedSuffixLinkCount);
+            transitionOffsets.set(stateId + 1L, transitionCount);
+        }
+    }
+
+    /**
+     * Выделяет массивы обратных суффиксных ссылок и переходов точно по размеру. Вызывается после computeOffsets.
+     */
+    void allocateTransitionsAndInvertedSuffixLinks() throws IOException {
+        long maxStateId = stateCount - 1L;
+        invertedSuffixLinks = new SegmentedLongArray(invertedSuffixLinkCount, maxStateId, storage, storageDirectory);
+        transitionSymbols = new SegmentedSymbolArray(transitionCount, alphabet.getSize(), storage, storageDirectory);
+        transitionTargetStateIds = new SegmentedLongArray(transitionCount, maxStateId, storage, storageDirectory);
+    }
+
+    /**
+     * Количество байт, которое займут массивы окончательного суффиксного автомата в момент наибольшего потребления памяти -
+     * при вычислении статистики вхождений (см. computeOccurrenceStatistics), когда к постоянным массивам добавляются временные.
+     * Вызывается после computeOffsets, до выделения остальных массивов.
+     *
+     * @param occurrenceEndPositionCount количество состояний, не являющихся клонами.
+     */
+    long getRequiredMemoryInBytes(long occurrenceEndPositionCount) {
+        int alphabetSize = alphabet.getSize();
+        long maxStateId = stateCount - 1L;
+        int denseStateCount = 0;
+
+        for (int i = 0; i < denseTransitionTableCandidateCount; ++i) {
+            if (isDenseTransitionTableState(denseTransitionTableCandidates[i])) {
+                ++denseStateCount;
+            }
+        }
+
+        return
+            // Массивы, выделенные конструктором.
+            getMemoryInBytes() +
+            // Массивы обратных суффиксных ссылок и переходов.
+            SegmentedLongArray.getMemoryInBytes(invertedSuffixLinkCount, maxStateId) +
+            SegmentedSymbolArray.getMemoryInBytes(transitionCount, alphabetSize) +
+            SegmentedLongArray.getMemoryInBytes(transitionCount, maxStateId) +
+            // Плотные таблицы переходов и их хеш-таблица.
+            SegmentedLongArray.getMemoryInBytes((long)denseStateCount * alphabetSize, stateCount) +
+            (long)getDenseTransitionHashTableCapacity(denseStateCount) * (Long.SIZE + Integer.SIZE) / Byte.SIZE +
+            // Статистика вхождений, включая временный порядок обхода в ширину.
+            2L * SegmentedLongArray.getMemoryInBytes(stateCount, stateCount) +
+            SegmentedLongArray.getMemoryInBytes(stateCount, stateCount - 1L) +
+            SegmentedLongArray.getMemoryInBytes(stateCount, occurrenceEndPositionCount) +
+            2L * SegmentedLongArray.getMemoryInBytes(occurrenceEndPositionCount, stateCount);
+    }
+
+    /**
+     * Копирует состояние времени построения buildingTimeState с идентификатором stateId (и его атрибуты из buildingTimeStateAttributes)
+     * по состоянию на шаг построения lastBuildStep.
+     *
+     * Признаки клонов хранятся по 64 в одном элементе cloneStateBits,
+     * поэтому параллельно заполняемые диапазоны состояний должны начинаться с идентификаторов, кратных 64.
+     */
+    void copyState(long stateId, State buildingTimeState, BuildingTimeStateAttributes buildingTimeStateAttributes, long lastBuildStep) {
+        minSubstringEndPositions.set(stateId, buildingTimeStateAttributes.getMinSubstringEndPos(stateId));
+
+        if (buildingTimeStateAttributes.isClone(stateId)) {
+            cloneStateBits.set(stateId >>> 6, cloneStateBits.get(stateId >>> 6) | (1L << stateId));
+        }
+
+        buildingTimeState.copyActualInvertedSuffixLinksTo(invertedSuffixLinks, invertedSuffixLinkOffsets.get(stateId), lastBuildStep);
+        buildingTimeState.copyActualTransitionsTo(transitionSymbols, transitionTargetStateIds, transitionOffsets.get(stateId), lastBuildStep, alphabet);
+    }
+
+    /**
+     * Строит плотные таблицы переходов для состояний, у которых не менее MIN_DENSE_TRANSITION_TABLE_TRANSITION_COUNT переходов
+     * и которые заполняют не менее 1 / MAX_DENSE_TRANSITION_TABLE_SPARSENESS своей строки.
+     * Вызывается после копирования всех состояний.
+     * Идемпотентна (после прерывания оптимизации выполняется повторно целиком).
+     */
+    void buildDenseTransitionTables() throws IOException {
+        int alphabetSize = alphabet.getSize();
+        long[] denseStateIds = new long[denseTransitionTableCandidateCount];
+        int denseStateCount = 0;
+
+        for (int i = 0; i < denseTransitionTableCandidateCount; ++i) {
+            long stateId = denseTransitionTableCandidates[i];
+
+            if (isDenseTransitionTableState(stateId)) {
+                denseStateIds[denseStateCount++] = stateId;
+            }
+        }
+
+        // Открытая адресация с линейным пробированием: заполнено не более половины ячеек.
+        int hashTableCapacity = getDenseTransitionHashTableCapacity(denseStateCount);
+        long[] hashTableStateIds = new long[hashTableCapacity];
+        Arrays.fill(hashTableStateIds, NO_STATE_ID);
+        int[] hashTableRows = new int[hashTableCapacity];
+
+        // Идентификаторы целевых состояний хранятся со сдвигом на единицу: 0 означает отсутствие перехода.
+        SegmentedLongArray targetStateIds = new SegmentedLongArray((long)denseStateCount * alphabetSize, stateCount, storage, storageDirectory);
+
+        for (int row = 0; row < denseStateCount; ++row) {
+            long stateId = denseStateIds[row];
+            int hashTablePos = hash(stateId) & (hashTableCapacity - 1);
+
+            while (hashTableStateIds[hashTablePos] != NO_STATE_ID) {
+                hashTablePos = (hashTablePos + 1) & (hashTableCapacity - 1);
+            }
+
+            hashTableStateIds[hashTablePos] = stateId;
+            hashTableRows[hashTablePos] = row;
+
+            long firstRowPos = (long)row * alphabetSize;
+            long followingLastTransitionPos = transitionOffsets.get(stateId + 1L);
+
+            for (long transitionPos = transitionOffsets.get(stateId); transitionPos < followingLastTransitionPos; ++transitionPos) {
+                targetStateIds.set(firstRowPos + transitionSymbols.get(transitionPos), transitionTargetStateIds.get(transitionPos) + 1L);
+            }
+        }
+
+        denseTransitionTableStateIds = hashTableStateIds;
+        denseTransitionTableRows = hashTableRows;
+        denseTransitionTargetStateIds = targetStateIds;
+    }
+
+    /**
+     * Вычисляет количества вхождений и наибольшие позиции окончания подстрок состояний
+     * и раскладывает позиции окончания по диапазонам поддеревьев.
+     * Порядок обхода в ширину дерева суффиксных ссылок (его хранит временный массив) ставит потомков после предков,
+     * поэтому при проходе в обратном порядке значения для потомков состояния уже вычислены,
+     * а при проходе в прямом порядке - уже известно начало диапазона состояния,
+     * которое делится между ним самим и его потомками.
+     * Вызывается после копирования всех состояний. Идемпотентна.
+     */
+    void computeOccurrenceStatistics() throws IOException {
+        SegmentedLongArray counts = new SegmentedLongArray(stateCount, stateCount, storage, storageDirectory);
+        SegmentedLongArray maxEndPositions = new SegmentedLongArray(stateCount, stateCount, storage, storageDirectory);
+        SegmentedLongArray bfsOrder = new SegmentedLongArray(stateCount, stateCount - 1L, storage, storageDirectory);
+        bfsOrder.set(0L, HEAD_STATE_ID);
+        long bfsOrderLength = 1L;
+
+        for (long i = 0L; i < bfsOrderLength; ++i) {
+            long stateId = bfsOrder.get(i);
+            long followingLastPos = invertedSuffixLinkOffsets.get(stateId + 1L);
+
+            for (long pos = invertedSuffixLinkOffsets.get(stateId); pos < followingLastPos; ++pos) {
+                bfsOrder.set(bfsOrderLength++, invertedSuffixLinks.get(pos));
+            }
+        }
+
+        for (long i = bfsOrderLength - 1L; i >= 0L; --i) {
+            long stateId = bfsOrder.get(i);
+            long count = isClone(stateId) ? 0L : 1L;
+            long maxEndPos = minSubstringEndPositions.get(stateId);
+            long followingLastPos = invertedSuffixLinkOffsets.get(stateId + 1L);
+
+            for (long pos = invertedSuffixLinkOffsets.get(stateId); pos < followingLastPos; ++pos) {
+                long childStateId = invertedSuffixLinks.get(pos);
+                count += counts.get(childStateId);
+                maxEndPos = max(maxEndPos, maxEndPositions.get(childStateId));
+            }
+
+            counts.set(stateId, count);
+            maxEndPositions.set(stateId, maxEndPos);
+        }
+
+        long occurrenceEndPositionCount = counts.get(HEAD_STATE_ID);
+        SegmentedLongArray rangeStarts = new SegmentedLongArray(stateCount, occurrenceEndPositionCount, storage, storageDirectory);
+        SegmentedLongArray endPositions = new SegmentedLongArray(occurrenceEndPositionCount, stateCount, storage, storageDirectory);
+        rangeStarts.set(HEAD_STATE_ID, 0L);
+
+        for (long i = 0L; i < bfsOrderLength; ++i) {
+            long stateId = bfsOrder.get(i);
+            long rangePos = rangeStarts.get(stateId);
+
+            if (!isClone(stateId)) {
+                endPositions.set(rangePos++, minSubstringEndPositions.get(stateId));
+            }
+
+            long followingLastPos = invertedSuffixLinkOffsets.get(stateId + 1L);
+
+            for (long pos = invertedSuffixLinkOffsets.get(stateId); pos < followingLastPos; ++pos) {
+                long childStateId = invertedSuffixLinks.get(pos);
+                rangeStarts.set(childStateId, rangePos);
+                rangePos += counts.get(childStateId);
+            }
+        }
+
+        // Внутренние вершины дерева минимумов имеют номера [1, occurrenceEndPositionCount), лист i - номер occurrenceEndPositionCount + i.
+        SegmentedLongArray minTree = new SegmentedLongArray(occurrenceEndPositionCount, stateCount, storage, storageDirectory);
+
+        for (long node = occurrenceEndPositionCount - 1L; node >= 1L; --node) {
+            minTree.set(node, min(getMinTreeValue(minTree, endPositions, 2L * node), getMinTreeValue(minTree, endPositions, 2L * node + 1L)));
+        }
+
+        occurrenceCounts = counts;
+        maxSubstringEndPositions = maxEndPositions;
+        occurrenceRangeStarts = rangeStarts;
+        occurrenceEndPositions = endPositions;
+        occurrenceEndPositionMinTree = minTree;
+    }
+
+    private static long getMinTreeValue(SegmentedLongArray minTree, SegmentedLongArray endPositions, long node) {
+        long leafCount = endPositions.getLength();
+        return node >= leafCount ? endPositions.get(node - leafCount) : minTree.get(node);
+    }
+
+    /**
+     * Освобождает массивы, не используемые при поиске. Вызывается при публикации.
+     */
+    void releasePostbuildOptimizingArrays() {
+        cloneStateBits = null;
+        invertedSuffixLinkOffsets = null;
+        invertedSuffixLinks = null;
+    }
+
+    long getStateCount() {
+        return stateCount;
+    }
+
+    long getInvertedSuffixLinkCount() {
+        return invertedSuffixLinkCount;
+    }
+
+    long getTransitionCount() {
+        return transitionCount;
+    }
+
+    int getDenseTransitionTableCount() {
+        return alphabet.getSize() > 0 ? (int)(denseTransitionTargetStateIds.getLength() / alphabet.getSize()) : 0;
+    }
+
+    /**
+     * @return количество байт, занимаемых массивами.
+     */
+    long getMemoryInBytes() {
+        return
+            getMemoryInBytes(minSubstringEndPositions) +
+            getMemoryInBytes(cloneStateBits) +
+            getMemoryInBytes(invertedSuffixLinkOffsets) +
+            getMemoryInBytes(invertedSuffixLinks) +
+            getMemoryInBytes(transitionOffsets) +
+            (transitionSymbols != null ? transitionSymbols.getMemoryInBytes() : 0L) +
+            getMemoryInBytes(transitionTargetStateIds) +
+            getMemoryInBytes(denseTransitionTargetStateIds) +
+            getMemoryInBytes(occurrenceCounts) +
+            getMemoryInBytes(maxSubstringEndPositions) +
+            getMemoryInBytes(occurrenceRangeStarts) +
+            getMemoryInBytes(occurrenceEndPositions) +
+            getMemoryInBytes(occurrenceEndPositionMinTree);
+    }
+
+    private static long getMemoryInBytes(SegmentedLongArray array) {
+        return array != null ? array.getMemoryInBytes() : 0L;
+    }
+
+    // ****************************** //
+
+    OccurrencePosIterator getOccurrencePosIterator(CharSequence soughtForCharSeq) {
+        long soughtForCharSeqStateId = findStateForSoughtForCharSequence(soughtForCharSeq);
+
+        return
+            soughtForCharSeqStateId != NO_STATE_ID ?
+            new DefinitiveOccurrencePosIterator(
+                soughtForCharSeq.length(),
+                occurrenceRangeStarts.get(soughtForCharSeqStateId),
+                occurrenceRangeStarts.get(soughtForCharSeqStateId) + occurrenceCounts.get(soughtForCharSeqStateId)) :
+            EmptyOccurrencePosIterator.INSTANCE;
+    }
+
+    /**
+     * @return итератор по вхождениям строки soughtForCharSeq с номерами [offset, offset + limit) в порядке возрастания позиций.
+     */
+    OccurrencePosIterator getSortedOccurrencePosIterator(CharSequence soughtForCharSeq, long offset, long limit) {
+        long soughtForCharSeqStateId = findStateForSoughtForCharSequence(soughtForCharSeq);
+
+        return
+            soughtForCharSeqStateId != NO_STATE_ID && offset < occurrenceCounts.get(soughtForCharSeqStateId) && limit > 0L ?
+            new SortedDefinitiveOccurrencePosIterator(soughtForCharSeq.length(), soughtForCharSeqStateId, offset, limit) :
+            EmptyOccurrencePosIterator.INSTANCE;
+    }
+
+    /**
+     * @return количество вхождений строки soughtForCharSeq в исходную строку (0, если строка пуста).
+     */
+    long getOccurrenceCount(CharSequence soughtForCharSeq) {
+        long soughtForCharSeqStateId = findStateForSoughtForCharSequence(soughtForCharSeq);
+        return soughtForCharSeqStateId != NO_STATE_ID ? occurrenceCounts.get(soughtForCharSeqStateId) : 0L;
+    }
+
+    /**
+     * @return позиция первого вхождения строки soughtForCharSeq в исходную строку или NO_OCCURRENCE_POS, если вхождений нет.
+     */
+    long getFirstOccurrencePos(CharSequence soughtForCharSeq) {
+        long soughtForCharSeqStateId = findStateForSoughtForCharSequence(soughtForCharSeq);
+
+        return
+            soughtForCharSeqStateId != NO_STATE_ID ?
+            minSubstringEndPositions.get(soughtForCharSeqStateId) - soughtForCharSeq.length() + 1 :
+            NO_OCCURRENCE_POS;
+    }
+
+    /**
+     * @return позиция последнего вхождения строки soughtForCharSeq в исходную строку или NO_OCCURRENCE_POS, если вхождений нет.
+     */
+    long getLastOccurrencePos(CharSequence soughtForCharSeq) {
+        long soughtForCharSeqStateId = findStateForSoughtForCharSequence(soughtForCharSeq);
+
+        return
+            soughtForCharSeqStateId != NO_STATE_ID ?
+            maxSubstringEndPositions.get(soughtForCharSeqStateId) - soughtForCharSeq.length() + 1 :
+            NO_OCCURRENCE_POS;
+    }
+
+    private long findStateForSoughtForCharSequence(CharSequence soughtForCharSeq) {
+        if (soughtForCharSeq == null || soughtForCharSeq.length() == 0) {
+            return NO_STATE_ID;
+        }
+
+        long currentStateId = HEAD_STATE_ID;
+
+        for (int i = 0; i < soughtForCharSeq.length() && currentStateId != NO_STATE_ID; ++i) {
+            int transitionSymbol = alphabet.getSymbol(soughtForCharSeq.charAt(i));
+
+            if (transitionSymbol == Alphabet.NO_SYMBOL) {
+                return NO_STATE_ID;
+            }
+
+            currentStateId = getTransitionTargetStateId(currentStateId, transitionSymbol);
+        }
+
+        return currentStateId;
+    }
+
+    /**
+     * Поиск в плотной таблице переходов состояния (если она есть), иначе - двоичный поиск по символам переходов состояния.
+     */
+    private long getTransitionTargetStateId(long stateId, int transitionSymbol) {
+        long low = transitionOffsets.get(stateId);
+        long high = transitionOffsets.get(stateId + 1L) - 1L;
+
+        if (high - low + 1L >= MIN_DENSE_TRANSITION_TABLE_TRANSITION_COUNT) {
+            int row = getDenseTransitionTableRow(stateId);
+
+            if (row != NO_DENSE_TRANSITION_TABLE_ROW) {
+                return denseTransitionTargetStateIds.get((long)row * alphabet.getSize() + transitionSymbol) - 1L;
+            }
+        }
+
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            int middleSymbol = transitionSymbols.get(middle);
+
+            if (middleSymbol < transitionSymbol) {
+                low = middle + 1L;
+            }
+            else if (middleSymbol > transitionSymbol) {
+                high = middle - 1L;
+            }
+            else {
+                return transitionTargetStateIds.get(middle);
+            }
+        }
+
+        return NO_STATE_ID;
+    }
+
+    private int getDenseTransitionTableRow(long stateId) {
+        int hashTableMask = denseTransitionTableStateIds.length - 1;
+
+        for (int hashTablePos = hash(stateId) & hashTableMask; ; hashTablePos = (hashTablePos + 1) & hashTableMask) {
+            long hashTableStateId = denseTransitionTableStateIds[hashTablePos];
+
+            if (hashTableStateId == stateId) {
+                return denseTransitionTableRows[hashTablePos];
+            }
+            else if (hashTableStateId == NO_STATE_ID) {
+                return NO_DENSE_TRANSITION_TABLE_ROW;
+            }
+        }
+    }
+
+    private static int hash(long stateId) {
+        long hash = stateId * 0x9E3779B97F4A7C15L;
+        return (int)(hash ^ (hash >>> 32));
+    }
+
+    private long getTransitionCount(long stateId) {
+        return transitionOffsets.get(stateId + 1L) - transitionOffsets.get(stateId);
+    }
+
+    private boolean isDenseTransitionTableState(long stateId) {
+        return getTransitionCount(stateId) * MAX_DENSE_TRANSITION_TABLE_SPARSENESS >= alphabet.getSize();
+    }
+
+    private static int getDenseTransitionHashTableCapacity(int denseStateCount) {
+        return Integer.highestOneBit(max(denseStateCount, 1) * 2 - 1) << 1;
+    }
+
+    private void addDenseTransitionTableCandidate(long stateId) {
+        if (denseTransitionTableCandidateCount == denseTransitionTableCandidates.length) {
+            denseTransitionTableCandidates =
+                Arrays.copyOf(denseTransitionTableCandidates, max(denseTransitionTableCandidates.length * 2, INITIAL_DENSE_TRANSITION_TABLE_CANDIDATE_CAPACITY));
+        }
+
+        denseTransitionTableCandidates[denseTransitionTableCandidateCount++] = stateId;
+    }
+
+    private boolean isClone(long stateId) {
+        return (cloneStateBits.get(stateId >>> 6) & (1L << stateId)) != 0L;
+    }
+
+    /**
+     * Итератор по всем вхождениям заданной строки в исходную строку:
+     * последовательный просмотр диапазона occurrenceEndPositions, занимаемого поддеревом состояния, соответствующего заданной строке.
+     * Разделяется делением непросмотренной части диапазона пополам.
+     */
+    private final class DefinitiveOccurrencePosIterator extends AbstractOccurrencePosIterator {
+
+        DefinitiveOccurrencePosIterator(int soughtForCharSeqLength, long pos, long followingLastPos) {
+            this.soughtForCharSeqLength = soughtForCharSeqLength;
+            this.pos = pos;
+            this.followingLastPos = followingLastPos;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pos < followingLastPos;
+        }
+
+        @Override
+        public long getNext() {
+            checkNotClosed();
+            PreconditionUtils.checkState(hasNext());
+
+            long occurrencePos = occurrenceEndPositions.get(pos++) - soughtForCharSeqLength + 1;
+
+            if (!hasNext()) {
+                close();
+            }
+
+            return occurrencePos;
+        }
+
+        @Override
+        public OccurrencePosIterator trySplit() {
+            if (followingLastPos - pos < 2L) {
+                return null;
+            }
+
+            long middlePos = (pos + followingLastPos) >>> 1;
+            OccurrencePosIterator splitIter = new DefinitiveOccurrencePosIterator(soughtForCharSeqLength, middlePos, followingLastPos);
+            followingLastPos = middlePos;
+
+            return splitIter;
+        }
+
+        @Override
+        public void close() {
+            checkNotClosed();
+            pos = followingLastPos;
+            closed = true;
+        }
+
+        // ****************************** //
+
+        @Override
+        protected int getNextUnchecked(long[] occurrencePositions, int offset, int maxCount) {
+            int count = (int)min(maxCount, followingLastPos - pos);
+
+            for (int i = 0; i < count; ++i) {
+                occurrencePositions[offset + i] = occurrenceEndPositions.get(pos++) - soughtForCharSeqLength + 1;
+            }
+
+            if (!hasNext()) {
+                close();
+            }
+
+            return count;
+        }
+
+        private void checkNotClosed() {
+            PreconditionUtils.checkState(!closed);
+        }
+
+        // ****************************** //
+
+        private final int soughtForCharSeqLength;
+        private long pos;
+        private long followingLastPos;
+        private boolean closed;
+    }
+
+    /**
+     * Итератор по вхождениям заданной строки в порядке возрастания позиций, начиная с вхождения с номером offset:
+     * слияние вершин дерева минимумов, покрывающих диапазон поддерева состояния, с помощью двоичной кучи.
+     * Извлеченная из кучи внутренняя вершина заменяется своими потомками, извлеченный лист дает очередную позицию.
+     */
+    private final class SortedDefinitiveOccurrencePosIterator extends AbstractOccurrencePosIterator {
+
+        SortedDefinitiveOccurrencePosIterator(int soughtForCharSeqLength, long soughtForCharSeqStateId, long offset, long limit) {
+            this.soughtForCharSeqLength = soughtForCharSeqLength;
+            this.leafCount = occurrenceEndPositions.getLength();
+
+            long rangeStart = occurrenceRangeStarts.get(soughtForCharSeqStateId);
+            long occurrenceCount = occurrenceCounts.get(soughtForCharSeqStateId);
+            this.remainingCount = min(limit, occurrenceCount - offset);
+
+            for (long left = rangeStart + leafCount, right = rangeStart + occurrenceCount + leafCount; left < right; left >>>= 1, right >>>= 1) {
+                if ((left & 1L) != 0L) {
+                    push(left++);
+                }
+
+                if ((right & 1L) != 0L) {
+                    push(--right);
+                }
+            }
+
+            for (long i = 0L; i < offset; ++i) {
+                popLeafEndPos();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remainingCount > 0L;
+        }
+
+        @Override
+        public long getNext() {
+            checkNotClosed();
+            PreconditionUtils.checkState(hasNext());
+
+            long occurrencePos = popLeafEndPos() - soughtForCharSeqLength + 1;
+            --remainingCount;
+
+            if (!hasNext()) {
+                close();
+            }
+
+            return occurrencePos;
+        }
+
+        @Override
+        public void close() {
+            checkNotClosed();
+            remainingCount = 0L;
+            heapNodes = null;
+            heapValues = null;
+            closed = true;
+        }
+
+        // ****************************** //
+
+        @Override
+        protected int getNextUnchecked(long[] occurrencePositions, int offset, int maxCount) {
+            int count = (int)min(maxCount, remainingCount);
+
+            for (int i = 0; i < count; ++i) {
+                occurrencePositions[offset + i] = popLeafEndPos() - soughtForCharSeqLength + 1;
+            }
+
+            remainingCount -= count;
+
+            if (!hasNext()) {
+                close();
+            }
+
+            return count;
+        }
+
+        private void checkNotClosed() {
+            PreconditionUtils.checkState(!closed);
+        }
+
+        /**
+         * Извлекает из кучи вершины с наименьшими минимумами, заменяя внутренние вершины их потомками, до первого листа.
+         * Куча не пуста: вхождений в диапазоне не меньше, чем offset + limit.
+         */
+        private long popLeafEndPos() {
+            long node = heapNodes[0];
+
+            while (node < leafCount) {
+                replaceTop(2L * node);
+                push(2L * node + 1L);
+                node = heapNodes[0];
+            }
+
+            long endPos = heapValues[0];
+            --heapSize;
+
+            if (heapSize > 0) {
+                replaceTop(heapNodes[heapSize], heapValues[heapSize]);
+            }
+
+            return endPos;
+        }
+
+        private void push(long node) {
+            if (heapSize == heapNodes.length) {
+                heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+                heapValues = Arrays.copyOf(heapValues, heapSize * 2);
+            }
+
+            long value = getMinTreeValue(occurrenceEndPositionMinTree, occurrenceEndPositions, node);
+            int pos = heapSize++;
+
+            while (pos > 0) {
+                int parentPos = (pos - 1) >>> 1;
+
+                if (heapValues[parentPos] <= value) {
+                    break;
+                }
+
+                heapNodes[pos] = heapNodes[parentPos];
+                heapValues[pos] = heapValues[parentPos];
+                pos = parentPos;
+            }
+
+            heapNodes[pos] = node;
+            heapValues[pos] = value;
+        }
+
+        private void replaceTop(long node) {
+            replaceTop(node, getMinTreeValue(occurrenceEndPositionMinTree, occurrenceEndPositions, node));
+        }
+
+        private void replaceTop(long node, long value) {
+            int pos = 0;
+
+            while (true) {
+                int childPos = 2 * pos + 1;
+
+                if (childPos >= heapSize) {
+                    break;
+                }
+
+                if (childPos + 1 < heapSize && heapValues[childPos + 1] < heapValues[childPos]) {
+                    ++childPos;
+                }
+
+                if (heapValues[childPos] >= value) {
+                    break;
+                }
+
+                heapNodes[pos] = heapNodes[childPos];
+                heapValues[pos] = heapValues[childPos];
+                pos = childPos;
+            }
+
+            heapNodes[pos] = node;
+            heapValues[pos] = value;
+        }
+
+        // ****************************** //
+
+        private final int soughtForCharSeqLength;
+        private final long leafCount;
+        private long remainingCount;
+
+        private long[] heapNodes = new long[INITIAL_SORTED_OCCURRENCE_HEAP_CAPACITY];
+        private long[] heapValues = new long[INITIAL_SORTED_OCCURRENCE_HEAP_CAPACITY];
+        private int heapSize;
+        private boolean closed;
+    }
+
+    // ****************************** //
+
+    private static final long HEAD_STATE_ID = 0L;
+
+    // Плотная таблица переходов занимает строку из alphabetSize элементов,
+    // поэтому строится только для состояний, заполняющих ее достаточно плотно.
+    private static final int MIN_DENSE_TRANSITION_TABLE_TRANSITION_COUNT = 16;
+    private static final int MAX_DENSE_TRANSITION_TABLE_SPARSENESS = 4;
+    private static final int INITIAL_DENSE_TRANSITION_TABLE_CANDIDATE_CAPACITY = 16;
+
+    private static final int NO_DENSE_TRANSITION_TABLE_ROW = -1;
+
+    // Диапазон раскладывается не более чем на 2 * 64 вершин дерева минимумов.
+    private static final int INITIAL_SORTED_OCCURRENCE_HEAP_CAPACITY = 128;
+
+    private final long stateCount;
+    private final Alphabet alphabet;
+    private final DefinitiveSuffixAutomationStorage storage;
+    private final File storageDirectory;
+
+    private final SegmentedLongArray minSubstringEndPositions;
+    private SegmentedLongArray cloneStateBits;
+
+    private SegmentedLongArray invertedSuffixLinkOffsets;
+    private SegmentedLongArray invertedSuffixLinks;
+
+    private final SegmentedLongArray transitionOffsets;
+    private SegmentedSymbolArray transitionSymbols;
+    private SegmentedLongArray transitionTargetStateIds;
+
+    private long invertedSuffixLinkCount;
+    private long transitionCount;
+
+    private long[] denseTransitionTableCandidates = new long[0];
+    private int denseTransitionTableCandidateCount;
+
+    // Хеш-таблица: идентификатор состояния -> номер строки его плотной таблицы переходов.
+    private long[] denseTransitionTableStateIds;
+    private int[] denseTransitionTableRows;
+    private SegmentedLongArray denseTransitionTargetStateIds;
+
+    private SegmentedLongArray occurrenceCounts;
+    private SegmentedLongArray maxSubstringEndPositions;
+    private SegmentedLongArray occurrenceRangeStarts;
+    private SegmentedLongArray occurrenceEndPositions;
+    private SegmentedLongArray occurrenceEndPositionMinTree;
+}
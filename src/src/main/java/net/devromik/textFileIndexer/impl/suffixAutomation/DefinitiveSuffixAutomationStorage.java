@@ -0,0 +1,110 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import static java.nio.ByteOrder.nativeOrder;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static net.devromik.textFileIndexer.utils.PreconditionUtils.checkState;
+
+/**
+ * Размещение массивов окончательного суффиксного автомата (см. DefinitiveSuffixAutomation).
+ *
+ * @author Shulnyaev Roman
+ */
+public enum DefinitiveSuffixAutomationStorage {
+
+    /**
+     * Массивы размещаются в куче.
+     */
+    HEAP {
+        @Override
+        IntBuffer allocateInts(int length, File directory) {
+            return IntBuffer.wrap(new int[length]);
+        }
+
+        @Override
+        CharBuffer allocateChars(int length, File directory) {
+            return CharBuffer.wrap(new char[length]);
+        }
+
+        @Override
+        ByteBuffer allocateBytes(long length, File directory) {
+            return ByteBuffer.wrap(new byte[toBufferLength(length)]);
+        }
+
+        @Override
+        LongBuffer allocateLongs(int length, File directory) {
+            return LongBuffer.wrap(new long[length]);
+        }
+    },
+
+    /**
+     * Массивы размещаются вне кучи (ByteBuffer.allocateDirect) и не обходятся сборщиком мусора.
+     * Объем ограничен параметром JVM -XX:MaxDirectMemorySize.
+     */
+    DIRECT {
+        @Override
+        ByteBuffer allocateBytes(long length, File directory) {
+            return ByteBuffer.allocateDirect(toBufferLength(length));
+        }
+    },
+
+    /**
+     * Массивы размещаются во временных файлах, отображенных в память (FileChannel.map), и не обходятся сборщиком мусора.
+     * Объем ограничен только адресным пространством и размером диска, страницы вытесняются операционной системой.
+     * Временные файлы создаются в целевой директории построителя индекса (если она не задана - в java.io.tmpdir)
+     * и удаляются сразу после отображения (где это возможно) или при завершении JVM.
+     */
+    MAPPED {
+        @Override
+        ByteBuffer allocateBytes(long length, File directory) throws IOException {
+            File storageFile = File.createTempFile(STORAGE_FILE_PREFIX, STORAGE_FILE_SUFFIX, directory);
+
+            try (RandomAccessFile storageFileAccess = new RandomAccessFile(storageFile, "rw")) {
+                storageFileAccess.setLength(length);
+
+                // Отображение остается действительным после закрытия канала.
+                FileChannel storageFileChannel = storageFileAccess.getChannel();
+                return storageFileChannel.map(READ_WRITE, 0L, toBufferLength(length));
+            }
+            finally {
+                if (!storageFile.delete()) {
+                    storageFile.deleteOnExit();
+                }
+            }
+        }
+    };
+
+    // ****************************** //
+
+    IntBuffer allocateInts(int length, File directory) throws IOException {
+        return allocateBytes((long)length * Integer.SIZE / Byte.SIZE, directory).order(nativeOrder()).asIntBuffer();
+    }
+
+    CharBuffer allocateChars(int length, File directory) throws IOException {
+        return allocateBytes((long)length * Character.SIZE / Byte.SIZE, directory).order(nativeOrder()).asCharBuffer();
+    }
+
+    LongBuffer allocateLongs(int length, File directory) throws IOException {
+        return allocateBytes((long)length * Long.SIZE / Byte.SIZE, directory).order(nativeOrder()).asLongBuffer();
+    }
+
+    /**
+     * Выделяет буфер из length байт в соответствии с размещением (реализуется каждым размещением).
+     */
+    abstract ByteBuffer allocateBytes(long length, File directory) throws IOException;
+
+    // ****************************** //
+
+    private static final String STORAGE_FILE_PREFIX = "suffixAutomation";
+    private static final String STORAGE_FILE_SUFFIX = ".storage";
+
+    /**
+     * Один буфер адресует не более Integer.MAX_VALUE байт.
+     */
+    private static int toBufferLength(long length) {
+        checkState(length <= Integer.MAX_VALUE);
+        return (int)length;
+    }
+}
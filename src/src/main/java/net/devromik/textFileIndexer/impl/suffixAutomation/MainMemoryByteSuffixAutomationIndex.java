@@ -0,0 +1,153 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.nio.charset.*;
+import java.nio.file.Path;
+import java.util.Arrays;
+import net.devromik.textFileIndexer.OccurrencePosIterator;
+import net.devromik.textFileIndexer.impl.*;
+import net.devromik.textFileIndexer.utils.*;
+
+/**
+ * Индекс по байтам исходного файла: позиции вхождений являются смещениями в байтах от начала файла,
+ * что позволяет непосредственно позиционироваться в исходном файле по результатам поиска.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class MainMemoryByteSuffixAutomationIndex extends AbstractIndex {
+
+    public static final long MAX_ACCEPTABLE_SOURCE_FILE_LENGTH = MainMemorySuffixAutomationIndex.MAX_ACCEPTABLE_SOURCE_FILE_LENGTH;
+
+    // ****************************** //
+
+    /**
+     * Искомая строка кодируется в последовательность байт в кодировке исходного файла.
+     */
+    @Override
+    public OccurrencePosIterator getOccurrencePosIterator(String soughtForCharSeq) {
+        return
+            !StringUtils.isNullOrEmpty(soughtForCharSeq) ?
+            getOccurrencePosIterator(soughtForCharSeq.getBytes(sourceFileEncoding)) :
+            EmptyOccurrencePosIterator.INSTANCE;
+    }
+
+    public OccurrencePosIterator getOccurrencePosIterator(byte[] soughtForByteSeq) {
+        return
+            soughtForByteSeq != null && soughtForByteSeq.length > 0 ?
+            automation.getOccurrencePosIterator(new ByteSequence(soughtForByteSeq)) :
+            EmptyOccurrencePosIterator.INSTANCE;
+    }
+
+    /**
+     * После оптимизации суффиксного автомата - без просмотра вхождений сверх offset + limit наименьших.
+     */
+    @Override
+    public OccurrencePosIterator getSortedOccurrencePosIterator(String soughtForCharSeq, long offset, long limit) {
+        PreconditionUtils.checkArgument(offset >= 0L && limit >= 0L);
+
+        return
+            !StringUtils.isNullOrEmpty(soughtForCharSeq) ?
+            getSortedOccurrencePosIterator(soughtForCharSeq.getBytes(sourceFileEncoding), offset, limit) :
+            EmptyOccurrencePosIterator.INSTANCE;
+    }
+
+    public OccurrencePosIterator getSortedOccurrencePosIterator(byte[] soughtForByteSeq, long offset, long limit) {
+        PreconditionUtils.checkArgument(offset >= 0L && limit >= 0L);
+
+        return
+            soughtForByteSeq != null && soughtForByteSeq.length > 0 ?
+            automation.getSortedOccurrencePosIterator(new ByteSequence(soughtForByteSeq), offset, limit) :
+            EmptyOccurrencePosIterator.INSTANCE;
+    }
+
+    /**
+     * После оптимизации суффиксного автомата - за время, пропорциональное длине строки soughtForCharSeq в байтах.
+     */
+    @Override
+    public long getOccurrenceCount(String soughtForCharSeq) {
+        return !StringUtils.isNullOrEmpty(soughtForCharSeq) ? getOccurrenceCount(soughtForCharSeq.getBytes(sourceFileEncoding)) : 0L;
+    }
+
+    public long getOccurrenceCount(byte[] soughtForByteSeq) {
+        return
+            soughtForByteSeq != null && soughtForByteSeq.length > 0 ?
+            automation.getOccurrenceCount(new ByteSequence(soughtForByteSeq)) :
+            0L;
+    }
+
+    @Override
+    public long getFirstOccurrencePos(String soughtForCharSeq) {
+        return !StringUtils.isNullOrEmpty(soughtForCharSeq) ? getFirstOccurrencePos(soughtForCharSeq.getBytes(sourceFileEncoding)) : NO_OCCURRENCE_POS;
+    }
+
+    public long getFirstOccurrencePos(byte[] soughtForByteSeq) {
+        return
+            soughtForByteSeq != null && soughtForByteSeq.length > 0 ?
+            automation.getFirstOccurrencePos(new ByteSequence(soughtForByteSeq)) :
+            NO_OCCURRENCE_POS;
+    }
+
+    @Override
+    public long getLastOccurrencePos(String soughtForCharSeq) {
+        return !StringUtils.isNullOrEmpty(soughtForCharSeq) ? getLastOccurrencePos(soughtForCharSeq.getBytes(sourceFileEncoding)) : NO_OCCURRENCE_POS;
+    }
+
+    public long getLastOccurrencePos(byte[] soughtForByteSeq) {
+        return
+            soughtForByteSeq != null && soughtForByteSeq.length > 0 ?
+            automation.getLastOccurrencePos(new ByteSequence(soughtForByteSeq)) :
+            NO_OCCURRENCE_POS;
+    }
+
+    // ****************************** //
+
+    MainMemoryByteSuffixAutomationIndex(Path sourceFilePath, Charset sourceFileEncoding, SuffixAutomation automation) {
+        super(sourceFilePath);
+        this.sourceFileEncoding = PreconditionUtils.checkNotNull(sourceFileEncoding);
+        this.automation = PreconditionUtils.checkNotNull(automation);
+    }
+
+    // ****************************** //
+
+    /**
+     * Последовательность байт в виде последовательности символов суффиксного автомата: байт b соответствует символу (char)(b & 0xFF).
+     */
+    private static final class ByteSequence implements CharSequence {
+
+        ByteSequence(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char)(bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > bytes.length || start > end) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            return new ByteSequence(Arrays.copyOfRange(bytes, start, end));
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+        // ****************************** //
+
+        private final byte[] bytes;
+    }
+
+    // ****************************** //
+
+    private final Charset sourceFileEncoding;
+    private final SuffixAutomation automation;
+}
@@ -0,0 +1,92 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import static java.nio.charset.Charset.defaultCharset;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import net.devromik.textFileIndexer.*;
+import net.devromik.textFileIndexer.impl.utils.*;
+
+/**
+ * Строит индекс по байтам исходного файла (алфавит суффиксного автомата - 256 символов).
+ * Исходный файл не декодируется: каждый байт b становится символом (char)(b & 0xFF)
+ * как при чтении из потока, так и при отображении файла в память.
+ * Кодировка исходного файла используется только для кодирования искомых строк, заданных как String.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class MainMemoryByteSuffixAutomationIndexBuilder extends AbstractMainMemorySuffixAutomationIndexBuilder {
+
+    public MainMemoryByteSuffixAutomationIndexBuilder() {
+        this(null, null, null, null);
+    }
+
+    public MainMemoryByteSuffixAutomationIndexBuilder(
+        File sourceFile,
+        Charset sourceFileEncoding,
+        File targetDirectory,
+        IndexEventListener indexEventListener) {
+
+        this(
+            sourceFile,
+            sourceFileEncoding,
+            targetDirectory,
+            indexEventListener,
+            new MainMemorySuffixAutomationIndexBuilderSettings());
+    }
+
+    /**
+     * @throws java.lang.NullPointerException если settings == null.
+     */
+    public MainMemoryByteSuffixAutomationIndexBuilder(
+        File sourceFile,
+        Charset sourceFileEncoding,
+        File targetDirectory,
+        IndexEventListener indexEventListener,
+        MainMemorySuffixAutomationIndexBuilderSettings settings) {
+
+        super(
+            sourceFile,
+            sourceFileEncoding,
+            targetDirectory,
+            indexEventListener,
+            settings);
+    }
+
+    @Override
+    public MainMemoryByteSuffixAutomationIndex getIndex() {
+        return (MainMemoryByteSuffixAutomationIndex)super.getIndex();
+    }
+
+    // ****************************** //
+
+    /**
+     * ISO-8859-1 отображает байт b ровно в символ (char)(b & 0xFF),
+     * т.е. "декодирование" сводится к расширению байт до символов.
+     */
+    @Override
+    Charset getSourceFileReadingEncoding() {
+        return ISO_8859_1;
+    }
+
+    /**
+     * Байты читаются из потока и расширяются до символов без CharsetDecoder (см. ByteWideningReader).
+     * Отображенный в память файл читается так же: для ISO-8859-1 MappedSourceFileReader расширяет байты без декодера.
+     */
+    @Override
+    Reader makeSourceFileReader(MainMemorySuffixAutomationIndexBuilderSettings settings) throws IOException {
+        return
+            settings.isSourceFileMappingUsed() ?
+            new MappedSourceFileReader(getSourceFile(), getSourceFileReadingEncoding()) :
+            new ByteWideningReader(new FileInputStream(getSourceFile()));
+    }
+
+    @Override
+    Index makeIndex(SuffixAutomation automation) {
+        return
+            new MainMemoryByteSuffixAutomationIndex(
+                getSourceFilePath(),
+                hasSourceFileEncoding() ? getSourceFileEncoding() : defaultCharset(),
+                automation);
+    }
+}
@@ -10,7 +10,11 @@ import net.devromik.textFileIndexer.utils.*;
  */
 public final class MainMemorySuffixAutomationIndex extends AbstractIndex {
 
-    public static final int MAX_ACCEPTABLE_SOURCE_FILE_LENGTH = Integer.MAX_VALUE / 2;
+    /**
+     * Идентификаторы состояний суффиксного автомата (их не более чем вдвое больше, чем символов)
+     * хранятся в 48 разрядах (см. BuildingTimeState).
+     */
+    public static final long MAX_ACCEPTABLE_SOURCE_FILE_LENGTH = 1L << 46;
 
     // ****************************** //
 
@@ -22,6 +26,43 @@ public final class MainMemorySuffixAutomationIndex extends AbstractIndex {
             EmptyOccurrencePosIterator.INSTANCE;
     }
 
+    /**
+     * После оптимизации суффиксного автомата - без просмотра вхождений сверх offset + limit наименьших.
+     */
+    @Override
+    public OccurrencePosIterator getSortedOccurrencePosIterator(String soughtForCharSeq, long offset, long limit) {
+        PreconditionUtils.checkArgument(offset >= 0L && limit >= 0L);
+
+        return
+            !StringUtils.isNullOrEmpty(soughtForCharSeq) ?
+            automation.getSortedOccurrencePosIterator(soughtForCharSeq, offset, limit) :
+            EmptyOccurrencePosIterator.INSTANCE;
+    }
+
+    /**
+     * После оптимизации суффиксного автомата - за время, пропорциональное длине строки soughtForCharSeq.
+     */
+    @Override
+    public long getOccurrenceCount(String soughtForCharSeq) {
+        return !StringUtils.isNullOrEmpty(soughtForCharSeq) ? automation.getOccurrenceCount(soughtForCharSeq) : 0L;
+    }
+
+    /**
+     * После оптимизации суффиксного автомата - за время, пропорциональное длине строки soughtForCharSeq.
+     */
+    @Override
+    public long getFirstOccurrencePos(String soughtForCharSeq) {
+        return !StringUtils.isNullOrEmpty(soughtForCharSeq) ? automation.getFirstOccurrencePos(soughtForCharSeq) : NO_OCCURRENCE_POS;
+    }
+
+    /**
+     * После оптимизации суффиксного автомата - за время, пропорциональное длине строки soughtForCharSeq.
+     */
+    @Override
+    public long getLastOccurrencePos(String soughtForCharSeq) {
+        return !StringUtils.isNullOrEmpty(soughtForCharSeq) ? automation.getLastOccurrencePos(soughtForCharSeq) : NO_OCCURRENCE_POS;
+    }
+
     // ****************************** //
 
     MainMemorySuffixAutomationIndex(Path sourceFilePath, SuffixAutomation automation) {
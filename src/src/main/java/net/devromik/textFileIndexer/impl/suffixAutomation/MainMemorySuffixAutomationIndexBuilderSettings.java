@@ -0,0 +1,159 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.util.concurrent.ForkJoinPool;
+import net.devromik.textFileIndexer.utils.PreconditionUtils;
+
+/**
+ * Настройки построителя индекса MainMemorySuffixAutomationIndexBuilder.
+ * Должны быть заданы до запуска построения индекса.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class MainMemorySuffixAutomationIndexBuilderSettings {
+
+    public static final int MIN_READING_BLOCK_LENGTH = 1;
+    public static final int MAX_READING_BLOCK_LENGTH = 1 << 24;
+    public static final int DEFAULT_READING_BLOCK_LENGTH = 4096;
+
+    public static final long MIN_VISIBILITY_EPOCH_CHAR_COUNT = 1L;
+    public static final long DEFAULT_VISIBILITY_EPOCH_CHAR_COUNT = MIN_VISIBILITY_EPOCH_CHAR_COUNT;
+    public static final long NO_VISIBILITY_EPOCH_TIMEOUT = Long.MAX_VALUE;
+
+    /**
+     * Общий для всех построителей пул оптимизации после построения (по одному потоку на процессор).
+     * Потоки пула создаются по мере необходимости и являются демонами.
+     */
+    public static final ForkJoinPool DEFAULT_POSTBUILD_OPTIMIZING_POOL = new ForkJoinPool();
+
+    // ****************************** //
+
+    /**
+     * Исходный файл читается блоками по readingBlockLength символов.
+     * Результаты обработки блока (в том числе прогресс построения) публикуются читателям индекса не более одного раза - после обработки всего блока
+     * (см. usingVisibilityEpochCharCount).
+     * Чем больше блок, тем быстрее построение, но тем реже читатели индекса видят новые вхождения.
+     *
+     * @throws java.lang.IllegalArgumentException если readingBlockLength < MIN_READING_BLOCK_LENGTH || readingBlockLength > MAX_READING_BLOCK_LENGTH.
+     */
+    public MainMemorySuffixAutomationIndexBuilderSettings usingReadingBlockLength(int readingBlockLength) {
+        PreconditionUtils.checkArgument(
+            readingBlockLength >= MIN_READING_BLOCK_LENGTH &&
+                readingBlockLength <= MAX_READING_BLOCK_LENGTH);
+        this.readingBlockLength = readingBlockLength;
+        return this;
+    }
+
+    public int getReadingBlockLength() {
+        return readingBlockLength;
+    }
+
+    /**
+     * Эпоха видимости: прогресс построения публикуется читателям индекса по окончании блока чтения,
+     * если с предыдущей публикации обработано не менее visibilityEpochCharCount символов
+     * или прошло не менее visibilityEpochMillis миллисекунд (см. usingVisibilityEpochMillis).
+     * В пределах эпохи читатели видят индекс по состоянию на ее начало, а версии, созданные в ней, перезаписываются на месте,
+     * поэтому чем длиннее эпоха, тем быстрее построение и меньше памяти занимают версии, но тем реже читатели индекса видят новые вхождения.
+     * По умолчанию прогресс публикуется после каждого блока.
+     *
+     * @throws java.lang.IllegalArgumentException если visibilityEpochCharCount < MIN_VISIBILITY_EPOCH_CHAR_COUNT.
+     */
+    public MainMemorySuffixAutomationIndexBuilderSettings usingVisibilityEpochCharCount(long visibilityEpochCharCount) {
+        PreconditionUtils.checkArgument(visibilityEpochCharCount >= MIN_VISIBILITY_EPOCH_CHAR_COUNT);
+        this.visibilityEpochCharCount = visibilityEpochCharCount;
+        return this;
+    }
+
+    public long getVisibilityEpochCharCount() {
+        return visibilityEpochCharCount;
+    }
+
+    /**
+     * Ограничение длительности эпохи видимости (см. usingVisibilityEpochCharCount).
+     * По умолчанию не ограничена (NO_VISIBILITY_EPOCH_TIMEOUT).
+     *
+     * @throws java.lang.IllegalArgumentException если visibilityEpochMillis < 0.
+     */
+    public MainMemorySuffixAutomationIndexBuilderSettings usingVisibilityEpochMillis(long visibilityEpochMillis) {
+        PreconditionUtils.checkArgument(visibilityEpochMillis >= 0L);
+        this.visibilityEpochMillis = visibilityEpochMillis;
+        return this;
+    }
+
+    public long getVisibilityEpochMillis() {
+        return visibilityEpochMillis;
+    }
+
+    /**
+     * Если sourceFileMapping == true, исходный файл отображается в память (FileChannel.map)
+     * и декодируется непосредственно из отображения, без промежуточных копий и системных вызовов read.
+     * Для однобайтовых кодировок используется таблица декодирования.
+     */
+    public MainMemorySuffixAutomationIndexBuilderSettings usingSourceFileMapping(boolean sourceFileMapping) {
+        this.sourceFileMapping = sourceFileMapping;
+        return this;
+    }
+
+    public boolean isSourceFileMappingUsed() {
+        return sourceFileMapping;
+    }
+
+    /**
+     * Если storagePresizing == true, массивы состояний суффиксного автомата выделяются до начала построения
+     * по количеству символов исходного файла (не более двух состояний на символ), а не растут по ходу построения.
+     * Для многобайтовых кодировок количество символов определяется предварительным проходом по исходному файлу,
+     * который выполняется потоком построения (асинхронно, как и само построение).
+     * Неиспользованная емкость освобождается по окончании построения.
+     * Потребление памяти становится предсказуемым с начала построения, но в его ходе выше, чем при росте по мере необходимости.
+     */
+    public MainMemorySuffixAutomationIndexBuilderSettings usingStoragePresizing(boolean storagePresizing) {
+        this.storagePresizing = storagePresizing;
+        return this;
+    }
+
+    public boolean isStoragePresizingUsed() {
+        return storagePresizing;
+    }
+
+    /**
+     * Оптимизация после построения (замена состояний времени построения окончательными)
+     * выполняется в пуле postbuildOptimizingPool параллельно по непересекающимся диапазонам состояний.
+     * Пул может быть общим для нескольких построителей.
+     *
+     * @throws java.lang.NullPointerException если postbuildOptimizingPool == null.
+     */
+    public MainMemorySuffixAutomationIndexBuilderSettings usingPostbuildOptimizingPool(ForkJoinPool postbuildOptimizingPool) {
+        this.postbuildOptimizingPool = PreconditionUtils.checkNotNull(postbuildOptimizingPool);
+        return this;
+    }
+
+    public ForkJoinPool getPostbuildOptimizingPool() {
+        return postbuildOptimizingPool;
+    }
+
+    /**
+     * Массивы окончательного суффиксного автомата (результата оптимизации после построения)
+     * размещаются в соответствии с definitiveAutomationStorage: в куче, вне кучи или в отображенных в память временных файлах
+     * целевой директории построителя.
+     * Размещение вне кучи снимает нагрузку со сборщика мусора и ограничение -Xmx для больших индексов.
+     *
+     * @throws java.lang.NullPointerException если definitiveAutomationStorage == null.
+     */
+    public MainMemorySuffixAutomationIndexBuilderSettings usingDefinitiveAutomationStorage(DefinitiveSuffixAutomationStorage definitiveAutomationStorage) {
+        this.definitiveAutomationStorage = PreconditionUtils.checkNotNull(definitiveAutomationStorage);
+        return this;
+    }
+
+    public DefinitiveSuffixAutomationStorage getDefinitiveAutomationStorage() {
+        return definitiveAutomationStorage;
+    }
+
+    // ****************************** //
+
+    private int readingBlockLength = DEFAULT_READING_BLOCK_LENGTH;
+    private long visibilityEpochCharCount = DEFAULT_VISIBILITY_EPOCH_CHAR_COUNT;
+    private long visibilityEpochMillis = NO_VISIBILITY_EPOCH_TIMEOUT;
+    private boolean sourceFileMapping;
+    private boolean storagePresizing;
+    private ForkJoinPool postbuildOptimizingPool = DEFAULT_POSTBUILD_OPTIMIZING_POOL;
+    private DefinitiveSuffixAutomationStorage definitiveAutomationStorage = DefinitiveSuffixAutomationStorage.HEAP;
+}
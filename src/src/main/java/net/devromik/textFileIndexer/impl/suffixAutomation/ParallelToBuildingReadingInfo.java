@@ -1,50 +1,177 @@
 package net.devromik.textFileIndexer.impl.suffixAutomation;
 
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import static java.lang.Math.min;
 
 /**
+ * Регистрация операций чтения, выполняемых параллельно построению суффиксного автомата.
+ *
+ * Читатели регистрируются без блокировок и упаковки: слот (элемент readerSlots) хранит шаг построения,
+ * по состоянию на который читают зарегистрированные в нем читатели, и их количество.
+ * Читатель занимает (CAS) свободный слот или слот со своим шагом построения, начиная поиск со слота, определяемого его потоком,
+ * поэтому читатели разных потоков, как правило, не конкурируют за один слот.
+ * Слоты разнесены по разным кеш-линиям (SLOT_STRIDE).
+ * Если все слоты заняты читателями других шагов построения, читатель регистрируется в резервной таблице (под блокировкой).
+ *
+ * Поток построения находит наименьший шаг построения, видимый читателям, просмотром слотов -
+ * не чаще одного раза за шаг построения.
+ *
  * @author Shulnyaev Roman
  */
 class ParallelToBuildingReadingInfo {
 
-    void onParallelToBuildingReadingStarted(int lastVisibleToReadBuildStep) {
-        ++totalReadCount;
+    static final int OVERFLOW_READER_SLOT = -1;
 
-        if (lastVisibleToReadBuildStepToReadCount.containsKey(lastVisibleToReadBuildStep)) {
-            lastVisibleToReadBuildStepToReadCount.put(
-                lastVisibleToReadBuildStep,
-                lastVisibleToReadBuildStepToReadCount.get(lastVisibleToReadBuildStep) + 1);
-        }
-        else {
-            lastVisibleToReadBuildStepToReadCount.put(lastVisibleToReadBuildStep, 1);
+    // ****************************** //
+
+    ParallelToBuildingReadingInfo() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    ParallelToBuildingReadingInfo(int minSlotCount) {
+        slotCount = Integer.highestOneBit(Math.max(minSlotCount, 1) * 2 - 1);
+        readerSlots = new AtomicLongArray(slotCount * SLOT_STRIDE);
+    }
+
+    /**
+     * Регистрирует читателя, видящего суффиксный автомат по состоянию на шаг построения lastVisibleToReadBuildStep.
+     *
+     * @return слот, в котором зарегистрирован читатель (передается в onParallelToBuildingReadingCompleted).
+     */
+    int onParallelToBuildingReadingStarted(long lastVisibleToReadBuildStep) {
+        long stepBits = (lastVisibleToReadBuildStep + 1L) << READER_COUNT_BITS;
+        int firstSlot = hash(Thread.currentThread().getId()) & (slotCount - 1);
+
+        for (int i = 0; i < slotCount; ++i) {
+            int slot = (firstSlot + i) & (slotCount - 1);
+            int slotPos = slot * SLOT_STRIDE;
+
+            while (true) {
+                long slotValue = readerSlots.get(slotPos);
+
+                if (slotValue == FREE_SLOT) {
+                    if (readerSlots.compareAndSet(slotPos, FREE_SLOT, stepBits | 1L)) {
+                        return slot;
+                    }
+                }
+                else if ((slotValue & ~MAX_SLOT_READER_COUNT) == stepBits && (slotValue & MAX_SLOT_READER_COUNT) != MAX_SLOT_READER_COUNT) {
+                    if (readerSlots.compareAndSet(slotPos, slotValue, slotValue + 1L)) {
+                        return slot;
+                    }
+                }
+                else {
+                    break;
+                }
+            }
         }
 
-        if (lastVisibleToReadBuildStepToReadCount.firstKey() > minLastVisibleToReadBuildStep) {
-            minLastVisibleToReadBuildStep = lastVisibleToReadBuildStepToReadCount.firstKey();
+        synchronized (overflowReaderCounts) {
+            Integer readerCount = overflowReaderCounts.get(lastVisibleToReadBuildStep);
+            overflowReaderCounts.put(lastVisibleToReadBuildStep, readerCount != null ? readerCount + 1 : 1);
+            overflowReaderCount = overflowReaderCounts.size();
         }
+
+        return OVERFLOW_READER_SLOT;
     }
 
-    void onParallelToBuildingReadingCompleted(int lastVisibleToReadBuildStep) {
-        --totalReadCount;
-        lastVisibleToReadBuildStepToReadCount.put(
-            lastVisibleToReadBuildStep,
-            lastVisibleToReadBuildStepToReadCount.get(lastVisibleToReadBuildStep) - 1);
+    void onParallelToBuildingReadingCompleted(long lastVisibleToReadBuildStep, int readerSlot) {
+        if (readerSlot != OVERFLOW_READER_SLOT) {
+            int slotPos = readerSlot * SLOT_STRIDE;
+
+            while (true) {
+                long slotValue = readerSlots.get(slotPos);
+                long newSlotValue = (slotValue & MAX_SLOT_READER_COUNT) == 1L ? FREE_SLOT : slotValue - 1L;
+
+                if (readerSlots.compareAndSet(slotPos, slotValue, newSlotValue)) {
+                    return;
+                }
+            }
+        }
+
+        synchronized (overflowReaderCounts) {
+            int readerCount = overflowReaderCounts.get(lastVisibleToReadBuildStep);
+
+            if (readerCount == 1) {
+                overflowReaderCounts.remove(lastVisibleToReadBuildStep);
+            }
+            else {
+                overflowReaderCounts.put(lastVisibleToReadBuildStep, readerCount - 1);
+            }
+
+            overflowReaderCount = overflowReaderCounts.size();
+        }
+    }
 
-        if (lastVisibleToReadBuildStepToReadCount.get(lastVisibleToReadBuildStep) == 0) {
-            lastVisibleToReadBuildStepToReadCount.remove(lastVisibleToReadBuildStep);
+    /**
+     * Вызывается только потоком построения.
+     *
+     * @return такой шаг построения суффиксного автомата, что ни один из читателей (текущих или будущих)
+     *         не видит суффиксный автомат по состоянию на более ранний шаг.
+     */
+    long getFirstIrrelevantForAllReadersBuildStep(long currentAutomationBuildStep) {
+        if (currentAutomationBuildStep == cachedForBuildStep) {
+            return cachedFirstIrrelevantForAllReadersBuildStep;
         }
 
-        if (!lastVisibleToReadBuildStepToReadCount.isEmpty() &&
-            lastVisibleToReadBuildStepToReadCount.firstKey() > minLastVisibleToReadBuildStep) {
+        // Новый читатель увидит суффиксный автомат по состоянию на последний опубликованный шаг построения.
+        // Шаг публикуется до просмотра слотов, поэтому читатель, регистрация которого не видна при просмотре,
+        // повторно прочитает опубликованный шаг и увидит более поздний, чем найденный здесь (см. SuffixAutomation.getOccurrencePosIterator).
+        long firstIrrelevantForAllReadersBuildStep = min(lastPublishedBuildStep, currentAutomationBuildStep - 1L);
+
+        for (int slotPos = 0; slotPos < readerSlots.length(); slotPos += SLOT_STRIDE) {
+            long slotValue = readerSlots.get(slotPos);
+
+            if (slotValue != FREE_SLOT) {
+                firstIrrelevantForAllReadersBuildStep = min(firstIrrelevantForAllReadersBuildStep, (slotValue >>> READER_COUNT_BITS) - 1L);
+            }
+        }
 
-            minLastVisibleToReadBuildStep = lastVisibleToReadBuildStepToReadCount.firstKey();
+        if (overflowReaderCount > 0) {
+            synchronized (overflowReaderCounts) {
+                if (!overflowReaderCounts.isEmpty()) {
+                    firstIrrelevantForAllReadersBuildStep = min(firstIrrelevantForAllReadersBuildStep, overflowReaderCounts.firstKey());
+                }
+            }
         }
+
+        cachedForBuildStep = currentAutomationBuildStep;
+        cachedFirstIrrelevantForAllReadersBuildStep = firstIrrelevantForAllReadersBuildStep;
+
+        return firstIrrelevantForAllReadersBuildStep;
     }
 
     // ****************************** //
 
-    int totalReadCount;
-    NavigableMap<Integer, Integer> lastVisibleToReadBuildStepToReadCount = new ConcurrentSkipListMap<>();
-    volatile int minLastVisibleToReadBuildStep = SuffixAutomation.LESS_THAN_MIN_BUILDING_STEP;
+    private static int hash(long threadId) {
+        long hash = threadId * 0x9E3779B97F4A7C15L;
+        return (int)(hash >>> 32);
+    }
+
+    // ****************************** //
+
+    // Слот: (шаг построения + 1) << READER_COUNT_BITS | количество читателей. Свободный слот - 0.
+    private static final int READER_COUNT_BITS = 16;
+    private static final long MAX_SLOT_READER_COUNT = (1L << READER_COUNT_BITS) - 1L;
+    private static final long FREE_SLOT = 0L;
+
+    // 8 элементов long - 64 байта.
+    private static final int SLOT_STRIDE = 8;
+
+    private final int slotCount;
+    private final AtomicLongArray readerSlots;
+
+    private final NavigableMap<Long, Integer> overflowReaderCounts = new TreeMap<>();
+    private volatile int overflowReaderCount;
+
+    // Пишутся и читаются только потоком построения.
+    private long cachedForBuildStep = SuffixAutomation.LESS_THAN_MIN_BUILDING_STEP;
+    private long cachedFirstIrrelevantForAllReadersBuildStep;
+
+    // Пишется только потоком построения.
+    volatile long lastPublishedBuildStep;
+
+    // Количество хранимых недействительных версий переходов и обратных суффиксных ссылок всех состояний.
+    // Пишется только потоком построения.
+    volatile long retainedDeadVersionCount;
 }
@@ -0,0 +1,103 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.io.*;
+import java.nio.*;
+import static java.lang.Math.min;
+import static net.devromik.textFileIndexer.utils.PreconditionUtils.checkArgument;
+
+/**
+ * Массив целых чисел с адресацией по long, размещенный в соответствии с DefinitiveSuffixAutomationStorage.
+ * Один буфер адресует не более 2 Гб, поэтому массив состоит из буферов (сегментов) по 2^SEGMENT_LENGTH_LOG элементов
+ * (последний сегмент - точно по размеру).
+ *
+ * Если при создании известно, что значения элементов не превышают Integer.MAX_VALUE,
+ * элементы хранятся как int, и массив занимает вдвое меньше памяти.
+ *
+ * Доступ к элементам - только абсолютный, поэтому массив разделяется потоками без синхронизации
+ * (при условии, что разные потоки пишут разные элементы).
+ */
+final class SegmentedLongArray {
+
+    static final int SEGMENT_LENGTH_LOG = 27;
+
+    // ****************************** //
+
+    /**
+     * @param maxValue наибольшее значение, которое может быть записано в массив.
+     * @throws java.lang.IllegalArgumentException если length < 0.
+     */
+    SegmentedLongArray(long length, long maxValue, DefinitiveSuffixAutomationStorage storage, File storageDirectory) throws IOException {
+        checkArgument(length >= 0L);
+
+        this.length = length;
+        int segmentCount = (int)((length + SEGMENT_LENGTH - 1L) >>> SEGMENT_LENGTH_LOG);
+
+        if (maxValue <= Integer.MAX_VALUE) {
+            intSegments = new IntBuffer[segmentCount];
+            longSegments = null;
+
+            for (int segmentIndex = 0; segmentIndex < segmentCount; ++segmentIndex) {
+                intSegments[segmentIndex] = storage.allocateInts(getSegmentLength(segmentIndex), storageDirectory);
+            }
+        }
+        else {
+            intSegments = null;
+            longSegments = new LongBuffer[segmentCount];
+
+            for (int segmentIndex = 0; segmentIndex < segmentCount; ++segmentIndex) {
+                longSegments[segmentIndex] = storage.allocateLongs(getSegmentLength(segmentIndex), storageDirectory);
+            }
+        }
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    long get(long index) {
+        return
+            intSegments != null ?
+            intSegments[(int)(index >>> SEGMENT_LENGTH_LOG)].get((int)index & SEGMENT_INDEX_MASK) :
+            longSegments[(int)(index >>> SEGMENT_LENGTH_LOG)].get((int)index & SEGMENT_INDEX_MASK);
+    }
+
+    void set(long index, long value) {
+        if (intSegments != null) {
+            intSegments[(int)(index >>> SEGMENT_LENGTH_LOG)].put((int)index & SEGMENT_INDEX_MASK, (int)value);
+        }
+        else {
+            longSegments[(int)(index >>> SEGMENT_LENGTH_LOG)].put((int)index & SEGMENT_INDEX_MASK, value);
+        }
+    }
+
+    /**
+     * @return количество байт, занимаемых элементами.
+     */
+    long getMemoryInBytes() {
+        return length * (intSegments != null ? Integer.SIZE : Long.SIZE) / Byte.SIZE;
+    }
+
+    /**
+     * @return количество байт, которое займут элементы массива длины length с наибольшим значением maxValue (до его выделения).
+     */
+    static long getMemoryInBytes(long length, long maxValue) {
+        return length * (maxValue <= Integer.MAX_VALUE ? Integer.SIZE : Long.SIZE) / Byte.SIZE;
+    }
+
+    // ****************************** //
+
+    private static final long SEGMENT_LENGTH = 1L << SEGMENT_LENGTH_LOG;
+    private static final int SEGMENT_INDEX_MASK = (int)SEGMENT_LENGTH - 1;
+
+    // ****************************** //
+
+    private int getSegmentLength(int segmentIndex) {
+        return (int)min(SEGMENT_LENGTH, length - ((long)segmentIndex << SEGMENT_LENGTH_LOG));
+    }
+
+    // ****************************** //
+
+    private final long length;
+    private final IntBuffer[] intSegments;
+    private final LongBuffer[] longSegments;
+}
@@ -0,0 +1,99 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.io.*;
+import java.nio.*;
+import static java.lang.Math.min;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.SegmentedLongArray.SEGMENT_LENGTH_LOG;
+import static net.devromik.textFileIndexer.utils.PreconditionUtils.checkArgument;
+
+/**
+ * Массив символов алфавита (см. Alphabet) с адресацией по long, размещенный в соответствии с DefinitiveSuffixAutomationStorage.
+ * Устроен так же, как SegmentedLongArray.
+ *
+ * Если алфавит содержит не более MAX_BYTE_SYMBOL_ALPHABET_SIZE символов (как правило, для текстовых файлов),
+ * символы хранятся как byte, иначе - как char.
+ */
+final class SegmentedSymbolArray {
+
+    static final int MAX_BYTE_SYMBOL_ALPHABET_SIZE = 1 << Byte.SIZE;
+
+    // ****************************** //
+
+    /**
+     * @throws java.lang.IllegalArgumentException если length < 0.
+     */
+    SegmentedSymbolArray(long length, int alphabetSize, DefinitiveSuffixAutomationStorage storage, File storageDirectory) throws IOException {
+        checkArgument(length >= 0L);
+
+        this.length = length;
+        int segmentCount = (int)((length + SEGMENT_LENGTH - 1L) >>> SEGMENT_LENGTH_LOG);
+
+        if (alphabetSize <= MAX_BYTE_SYMBOL_ALPHABET_SIZE) {
+            byteSegments = new ByteBuffer[segmentCount];
+            charSegments = null;
+
+            for (int segmentIndex = 0; segmentIndex < segmentCount; ++segmentIndex) {
+                byteSegments[segmentIndex] = storage.allocateBytes(getSegmentLength(segmentIndex), storageDirectory);
+            }
+        }
+        else {
+            byteSegments = null;
+            charSegments = new CharBuffer[segmentCount];
+
+            for (int segmentIndex = 0; segmentIndex < segmentCount; ++segmentIndex) {
+                charSegments[segmentIndex] = storage.allocateChars(getSegmentLength(segmentIndex), storageDirectory);
+            }
+        }
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    int get(long index) {
+        return
+            byteSegments != null ?
+            byteSegments[(int)(index >>> SEGMENT_LENGTH_LOG)].get((int)index & SEGMENT_INDEX_MASK) & 0xFF :
+            charSegments[(int)(index >>> SEGMENT_LENGTH_LOG)].get((int)index & SEGMENT_INDEX_MASK);
+    }
+
+    void set(long index, int symbol) {
+        if (byteSegments != null) {
+            byteSegments[(int)(index >>> SEGMENT_LENGTH_LOG)].put((int)index & SEGMENT_INDEX_MASK, (byte)symbol);
+        }
+        else {
+            charSegments[(int)(index >>> SEGMENT_LENGTH_LOG)].put((int)index & SEGMENT_INDEX_MASK, (char)symbol);
+        }
+    }
+
+    /**
+     * @return количество байт, занимаемых элементами.
+     */
+    long getMemoryInBytes() {
+        return byteSegments != null ? length : length * Character.SIZE / Byte.SIZE;
+    }
+
+    /**
+     * @return количество байт, которое займут элементы массива длины length над алфавитом размера alphabetSize (до его выделения).
+     */
+    static long getMemoryInBytes(long length, int alphabetSize) {
+        return alphabetSize <= MAX_BYTE_SYMBOL_ALPHABET_SIZE ? length : length * Character.SIZE / Byte.SIZE;
+    }
+
+    // ****************************** //
+
+    private static final long SEGMENT_LENGTH = 1L << SEGMENT_LENGTH_LOG;
+    private static final int SEGMENT_INDEX_MASK = (int)SEGMENT_LENGTH - 1;
+
+    // ****************************** //
+
+    private int getSegmentLength(int segmentIndex) {
+        return (int)min(SEGMENT_LENGTH, length - ((long)segmentIndex << SEGMENT_LENGTH_LOG));
+    }
+
+    // ****************************** //
+
+    private final long length;
+    private final ByteBuffer[] byteSegments;
+    private final CharBuffer[] charSegments;
+}
@@ -1,47 +1,74 @@
 package net.devromik.textFileIndexer.impl.suffixAutomation;
 
-import java.util.Iterator;
-import net.devromik.textFileIndexer.utils.OrderedCharIntPair;
-
 /**
  * Состояние суффиксного автомата.
  * Биективно соответствует классу эквивалентности множеств позиций окончаний подстрок индексируемой строки.
  * Идентифицируется неотрицательным целым числом (см. SuffixAutomation).
+ * Скалярные атрибуты состояний (наибольшая длина подстроки, наименьшая позиция окончания подстроки, суффиксная ссылка, признак клона)
+ * хранятся вне состояний - в параллельных массивах (см. BuildingTimeStateAttributes).
  */
 interface State {
 
-    int NO_STATE_ID = -1;
+    long NO_STATE_ID = -1L;
 
     // ****************************** //
 
+    void addInvertedSuffixLink(long sourceStateId, long currentAutomationBuildStep);
+    void removeInvertedSuffixLink(long sourceStateId, long currentAutomationBuildStep);
+
     /**
-     * @return наибольшую длину подстроки,
-     *         принадлежащей классу эквивалентности множеств позиций окончаний подстрок,
-     *         соответствующему данному состоянию суффиксного автомата.
+     * Добавляет в очередь queue состояния-источники обратных суффиксных ссылок, актуальных для шага построения automationBuildStep.
      */
-    int getGreatestSubstringLength();
+    void enqueueActualInvertedSuffixLinksTo(StateIdQueue queue, long automationBuildStep);
+    int getActualInvertedSuffixLinkCount(long automationBuildStep);
 
     /**
-     * @return минимальную позицию окончания подстроки,
-     *         принадлежащей классу эквивалентности множеств позиций окончаний подстрок,
-     *         соответствующему данному состоянию суффиксного автомата.
+     * Записывает состояния-источники актуальных обратных суффиксных ссылок в sourceStateIds, начиная с позиции firstPos.
+     * Если sourceStateIds == null, то только подсчитывает их.
+     *
+     * @return количество актуальных обратных суффиксных ссылок.
      */
-    int getMinSubstringEndPos();
+    int copyActualInvertedSuffixLinksTo(SegmentedLongArray sourceStateIds, long firstPos, long automationBuildStep);
 
-    void setSuffixLink(int targetStateId);
-    int getSuffixLink();
+    boolean hasActualTransition(char transitionChar, long automationBuildStep);
+    void addTransition(char transitionChar, long targetStateId, long currentAutomationBuildStep);
+    void redirectTransition(char transitionChar, long newTargetStateId, long currentAutomationBuildStep);
+    long getActualTransitionTargetStateId(char transitionChar, long automationBuildStep);
+    int getActualTransitionCount(long automationBuildStep);
+
+    /**
+     * Добавляет состоянию targetState все переходы данного состояния, актуальные для текущего шага построения.
+     */
+    void copyActualTransitionsTo(State targetState, long currentAutomationBuildStep);
+
+    /**
+     * Записывает номера символов в алфавите alphabet и состояния-цели актуальных переходов в transitionSymbols и targetStateIds соответственно,
+     * начиная с позиции firstPos, в порядке возрастания символов.
+     * Если transitionSymbols == null, то только подсчитывает их.
+     *
+     * @return количество актуальных переходов.
+     */
+    int copyActualTransitionsTo(
+        SegmentedSymbolArray transitionSymbols,
+        SegmentedLongArray targetStateIds,
+        long firstPos,
+        long automationBuildStep,
+        Alphabet alphabet);
 
-    void addInvertedSuffixLink(int sourceStateId, int currentAutomationBuildStep);
-    void removeInvertedSuffixLink(int sourceStateId, int currentAutomationBuildStep);
-    Iterator<Integer> getActualInvertedSuffixLinksIterator(int automationBuildStep);
-    int getActualInvertedSuffixLinkCount(int automationBuildStep);
+    /**
+     * @return количество хранимых версий переходов и обратных суффиксных ссылок, помеченных как недействительные.
+     */
+    int getDeadVersionCount();
 
-    boolean hasActualTransition(char transitionChar, int automationBuildStep);
-    void addTransition(char transitionChar, int targetStateId, int currentAutomationBuildStep);
-    void redirectTransition(char transitionChar, int newTargetStateId, int currentAutomationBuildStep);
-    int getActualTransitionTargetStateId(char transitionChar, int automationBuildStep);
-    Iterator<OrderedCharIntPair> getActualTransitionsIterator(int automationBuildStep);
-    int getActualTransitionCount(int automationBuildStep);
+    /**
+     * @return оценку количества байт, занимаемых состоянием (включая таблицы версий).
+     */
+    long getMemoryInBytes();
 
-    boolean isClone();
+    /**
+     * Удаляет недействительные версии, которые уже не видны ни одному читателю.
+     *
+     * @return true, если у состояния остались недействительные версии.
+     */
+    boolean sweepDeadVersions(long currentAutomationBuildStep);
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+/**
+ * Очередь идентификаторов состояний (кольцевой буфер) для обхода дерева суффиксных ссылок без упаковки идентификаторов в объекты.
+ *
+ * Очереди переиспользуются: acquire берет свободную очередь текущего потока (или создает новую),
+ * release возвращает очередь текущему потоку, если тот еще не хранит свободную очередь,
+ * а очередь не выросла сверх MAX_POOLED_CAPACITY.
+ */
+final class StateIdQueue {
+
+    static final int MAX_POOLED_CAPACITY = 1 << 16;
+
+    // ****************************** //
+
+    static StateIdQueue acquire() {
+        StateIdQueue queue = FREE_QUEUE.get();
+
+        if (queue != null) {
+            FREE_QUEUE.set(null);
+            return queue;
+        }
+
+        return new StateIdQueue();
+    }
+
+    void release() {
+        headPos = 0;
+        size = 0;
+
+        if (stateIds.length <= MAX_POOLED_CAPACITY && FREE_QUEUE.get() == null) {
+            FREE_QUEUE.set(this);
+        }
+    }
+
+    void enqueue(long stateId) {
+        if (size == stateIds.length) {
+            long[] newStateIds = new long[stateIds.length * 2];
+
+            for (int i = 0; i < size; ++i) {
+                newStateIds[i] = stateIds[(headPos + i) & (stateIds.length - 1)];
+            }
+
+            stateIds = newStateIds;
+            headPos = 0;
+        }
+
+        stateIds[(headPos + size) & (stateIds.length - 1)] = stateId;
+        ++size;
+    }
+
+    long dequeue() {
+        long stateId = stateIds[headPos];
+        headPos = (headPos + 1) & (stateIds.length - 1);
+        --size;
+
+        return stateId;
+    }
+
+    long peek() {
+        return stateIds[headPos];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    // ****************************** //
+
+    // Степень двойки: позиции в кольцевом буфере вычисляются по маске.
+    private static final int INITIAL_CAPACITY = 32;
+
+    private static final ThreadLocal<StateIdQueue> FREE_QUEUE = new ThreadLocal<>();
+
+    private long[] stateIds = new long[INITIAL_CAPACITY];
+    private int headPos;
+    private int size;
+}
@@ -1,14 +1,17 @@
 package net.devromik.textFileIndexer.impl.suffixAutomation;
 
+import java.io.*;
 import java.nio.file.Path;
-import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 import org.slf4j.*;
+import static java.lang.Math.max;
 import static java.lang.Thread.*;
 import static java.text.MessageFormat.format;
 import net.devromik.textFileIndexer.OccurrencePosIterator;
-import net.devromik.textFileIndexer.impl.EmptyOccurrencePosIterator;
-import static net.devromik.textFileIndexer.impl.suffixAutomation.MainMemorySuffixAutomationIndex.MAX_ACCEPTABLE_SOURCE_FILE_LENGTH;
+import static net.devromik.textFileIndexer.Index.NO_OCCURRENCE_POS;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.MainMemorySuffixAutomationIndexBuilderSettings.NO_VISIBILITY_EPOCH_TIMEOUT;
+import net.devromik.textFileIndexer.impl.*;
 import net.devromik.textFileIndexer.utils.*;
 import static org.slf4j.LoggerFactory.*;
 
@@ -20,47 +23,108 @@ import static org.slf4j.LoggerFactory.*;
  */
 final class SuffixAutomation {
 
-    static final int INITIAL_STATE_ARRAY_CAPACITY = 1024;
-    static final int LESS_THAN_MIN_BUILDING_STEP = -1;
-    static final int GREATER_THAN_MAX_BUILDING_STEP = MAX_ACCEPTABLE_SOURCE_FILE_LENGTH + 1;
+    static final long LESS_THAN_MIN_BUILDING_STEP = -1L;
+    static final long GREATER_THAN_MAX_BUILDING_STEP = Long.MAX_VALUE;
 
     // ****************************** //
 
-    SuffixAutomation(Path sourceFilePath) {
+    /**
+     * @param postbuildOptimizingPool пул, в котором выполняется оптимизация после построения.
+     * @param definitiveAutomationStorage размещение массивов окончательного суффиксного автомата.
+     * @param definitiveAutomationStorageDirectory директория для файлов, отображаемых в память (может быть null).
+     */
+    SuffixAutomation(
+        Path sourceFilePath,
+        ForkJoinPool postbuildOptimizingPool,
+        DefinitiveSuffixAutomationStorage definitiveAutomationStorage,
+        File definitiveAutomationStorageDirectory) {
+
         checkSetSourceFilePath(sourceFilePath);
+        this.postbuildOptimizingPool = PreconditionUtils.checkNotNull(postbuildOptimizingPool);
+        this.definitiveAutomationStorage = PreconditionUtils.checkNotNull(definitiveAutomationStorage);
+        this.definitiveAutomationStorageDirectory = definitiveAutomationStorageDirectory;
         initParallelToBuildReadInfo();
         createHeadState();
         initPostbuildOptimizingStatus();
     }
 
-    void extend(char currentChar) {
+    /**
+     * Эпоха видимости: прогресс построения публикуется читателям после обработки блока символов,
+     * если с предыдущей публикации обработано не менее visibilityEpochCharCount символов
+     * или прошло не менее visibilityEpochMillis миллисекунд.
+     * Версии переходов, созданные в пределах неопубликованной эпохи, не видны читателям и перезаписываются на месте (см. BuildingTimeState).
+     */
+    void setVisibilityEpoch(long visibilityEpochCharCount, long visibilityEpochMillis) {
+        PreconditionUtils.checkArgument(visibilityEpochCharCount > 0L && visibilityEpochMillis >= 0L);
+        this.visibilityEpochCharCount = visibilityEpochCharCount;
+        this.visibilityEpochNanos =
+            visibilityEpochMillis != NO_VISIBILITY_EPOCH_TIMEOUT ?
+            TimeUnit.MILLISECONDS.toNanos(visibilityEpochMillis) :
+            NO_VISIBILITY_EPOCH_TIMEOUT;
+    }
+
+    /**
+     * Заранее выделяет массивы состояний и их атрибутов для построения по исходной строке длины expectedCharCount:
+     * суффиксный автомат строки длины n содержит не более max(2n - 1, n + 1) состояний.
+     * Построение не выделяет память под состояния, если длина исходной строки не превышает ожидаемую,
+     * а неиспользованная емкость освобождается по окончании построения (см. onBuildCompleted).
+     * Вызывается до начала построения.
+     *
+     * @throws java.lang.IllegalArgumentException если expectedCharCount < 0.
+     */
+    void presize(long expectedCharCount) {
+        PreconditionUtils.checkArgument(expectedCharCount >= 0L);
+        long maxStateCount = Math.max(2L * expectedCharCount, 1L);
+
+        states.ensureCapacity(maxStateCount);
+        stateAttributes.ensureCapacity(maxStateCount);
+    }
+
+    /**
+     * Расширяет суффиксный автомат символами chars[offset, offset + length - 1].
+     * Читателям результат публикуется не более одного раза - после обработки всех символов блока (см. setVisibilityEpoch).
+     */
+    void extend(char[] chars, int offset, int length) {
+        int followingLastPos = offset + length;
+
+        for (int pos = offset; pos < followingLastPos; ++pos) {
+            alphabet.add(chars[pos]);
+            extendWithoutPublishing(chars[pos]);
+        }
+
+        unpublishedCharCount += length;
+
+        if (unpublishedCharCount >= visibilityEpochCharCount ||
+            visibilityEpochNanos != NO_VISIBILITY_EPOCH_TIMEOUT && System.nanoTime() - lastPublishingNanoTime >= visibilityEpochNanos) {
+
+            publishLastCompletedBuildStep();
+        }
+    }
+
+    private void extendWithoutPublishing(char currentChar) {
         growStateArrayIfNeeded();
+        BuildingTimeStateAttributes attributes = stateAttributes;
 
         // Создаем новое состояние, соответствующее прочитанному префиксу readPrefix исходной строки (включая currentChar).
-        int newStateId = stateCount++;
-        int currentBuildStep = newStateId;
-        int newStateGreatestSubstringLength = states.get(lastOriginStateId).getGreatestSubstringLength() + 1;
-        State newState =
-            new BuildingTimeState(
-                    newStateGreatestSubstringLength,
-                    newStateGreatestSubstringLength - 1,
-                    false,
-                    parallelToBuildReadInfo);
-
-        // Добавляем новое состояние в общий набор состояний.
-        states.set(newStateId, newState);
+        long newStateId = stateCount++;
+        long currentBuildStep = newStateId;
+        long newStateGreatestSubstringLength = attributes.getGreatestSubstringLength(lastOriginStateId) + 1;
+        attributes.setAttributes(newStateId, newStateGreatestSubstringLength, newStateGreatestSubstringLength - 1L, false);
+
+        // Добавляем новое состояние в общий набор состояний (атрибуты записаны до публикации).
+        states.set(newStateId, new BuildingTimeState(parallelToBuildReadInfo));
 
         // Двигаемся вверх по суффиксным ссылкам, начиная с состояния lastOriginStateId, соответствующего прочитанному префиксу prevReadPrefix исходной строки без currentChar в конце.
         // Если текущее состояние stateId не имеет перехода по currentChar, то добавляем для этого состояния переход по currentChar.
         // Мы должны сделать это, поскольку stateId соответствует некоторому суффиксу prevReadPrefix, "расширяющему" класс эквивалентности множеств позиций окончаний подстрок,
         // соответсвующий предыдущему состоянию на нашем пути.
         // Если же stateId имеет переход по currentChar, то завершаем указанное движение (почему - см. ниже).
-        int stateId = lastOriginStateId;
+        long stateId = lastOriginStateId;
         State state = states.get(stateId);
 
         while (stateId != State.NO_STATE_ID && !state.hasActualTransition(currentChar, currentBuildStep)) {
             state.addTransition(currentChar, newStateId, currentBuildStep);
-            stateId = state.getSuffixLink();
+            stateId = attributes.getSuffixLink(stateId);
             state = stateId != State.NO_STATE_ID ? states.get(stateId) : null;
         }
 
@@ -80,12 +144,12 @@ final class SuffixAutomation {
         // т. е. suffixLink.getGreatestSubstringLength() == state.getGreatestSubstringLength() + 1.
         // Однако такого состояния могло и не существовать: в таком случае нам надо выполнить "расщепление" состояния.
         else {
-            int targetId = state.getActualTransitionTargetStateId(currentChar, currentBuildStep);
+            long targetId = state.getActualTransitionTargetStateId(currentChar, currentBuildStep);
             State target = states.get(targetId);
 
             // Если переход (state, target) оказался сплошным (target.getGreatestSubstringLength() == state.getGreatestSubstringLength() + 1),
             // то необходимости в расщеплении нет, и мы просто просто проводим суффиксную ссылку из newState в target.
-            if (target.getGreatestSubstringLength() == state.getGreatestSubstringLength() + 1) {
+            if (attributes.getGreatestSubstringLength(targetId) == attributes.getGreatestSubstringLength(stateId) + 1L) {
                 setSuffixLink(newStateId, targetId, currentBuildStep);
             }
             // Другой, более сложный вариант - когда переход несплошной, т. е. target.getGreatestSubstringLength() > state.getGreatestSubstringLength() + 1.
@@ -106,42 +170,116 @@ final class SuffixAutomation {
             // пока мы не дойдем до фиктивного состояния NO_STATE_ID или не дойдем до состояния,
             // переход из которого ведет в состояние, отличное от target.
             else {
-                int targetCloneId = stateCount++;
-                State targetClone =
-                    new BuildingTimeState(
-                            state.getGreatestSubstringLength() + 1,
-                            target.getMinSubstringEndPos(),
-                            true,
-                            parallelToBuildReadInfo);
+                long targetCloneId = stateCount++;
+                attributes.setAttributes(
+                    targetCloneId,
+                    attributes.getGreatestSubstringLength(stateId) + 1L,
+                    attributes.getMinSubstringEndPos(targetId),
+                    true);
+                State targetClone = new BuildingTimeState(parallelToBuildReadInfo);
                 states.set(targetCloneId, targetClone);
-                setSuffixLink(targetCloneId, target.getSuffixLink(), currentBuildStep);
-                Iterator<OrderedCharIntPair> targetActualTransitionsIter = target.getActualTransitionsIterator(currentBuildStep);
-
-                while (targetActualTransitionsIter.hasNext()) {
-                    OrderedCharIntPair targetActualTransition = targetActualTransitionsIter.next();
-                    targetClone.addTransition(
-                        targetActualTransition.left,
-                        targetActualTransition.right,
-                        currentBuildStep);
-                }
+                setSuffixLink(targetCloneId, attributes.getSuffixLink(targetId), currentBuildStep);
+                target.copyActualTransitionsTo(targetClone, currentBuildStep);
 
                 while (stateId != State.NO_STATE_ID && state.getActualTransitionTargetStateId(currentChar, currentBuildStep) == targetId) {
+                    int deadVersionCount = state.getDeadVersionCount();
                     state.redirectTransition(currentChar, targetCloneId, currentBuildStep);
-                    stateId = state.getSuffixLink();
+                    onDeadVersionsMaybeAdded(stateId, state, deadVersionCount, currentBuildStep);
+                    stateId = attributes.getSuffixLink(stateId);
                     state = stateId != State.NO_STATE_ID ? states.get(stateId) : null;
                 }
 
-                setSuffixLink(newStateId, targetCloneId, currentBuildStep);
-                states.get(target.getSuffixLink()).removeInvertedSuffixLink(targetId, currentBuildStep);
+                // Обратные суффиксные ссылки добавляются в порядке возрастания идентификаторов состояний-источников
+                // (targetId < newStateId), что сохраняет порядок обхода вхождений.
+                long targetSuffixLink = attributes.getSuffixLink(targetId);
+                State targetSuffixLinkState = states.get(targetSuffixLink);
+                int deadVersionCount = targetSuffixLinkState.getDeadVersionCount();
+                targetSuffixLinkState.removeInvertedSuffixLink(targetId, currentBuildStep);
+                onDeadVersionsMaybeAdded(targetSuffixLink, targetSuffixLinkState, deadVersionCount, currentBuildStep);
                 setSuffixLink(targetId, targetCloneId, currentBuildStep);
+                setSuffixLink(newStateId, targetCloneId, currentBuildStep);
             }
         }
 
         lastOriginStateId = newStateId;
-        lastVisibleToReadStateId = stateCount;
+
+        if (++unsweptCharCount == DEAD_VERSION_SWEEP_INTERVAL) {
+            unsweptCharCount = 0;
+            sweepDeadVersions(currentBuildStep);
+        }
+    }
+
+    /**
+     * Ставит состояние в очередь очистки, если у него появились мертвые версии (см. BuildingTimeState).
+     * Очередь хранит пары (шаг построения, состояние): мертвые версии состояния недействительны не позднее, чем с этого шага.
+     */
+    private void onDeadVersionsMaybeAdded(long stateId, State state, int prevDeadVersionCount, long currentBuildStep) {
+        if (prevDeadVersionCount == 0 && state.getDeadVersionCount() > 0) {
+            deadVersionSweepQueue.enqueue(currentBuildStep);
+            deadVersionSweepQueue.enqueue(stateId);
+        }
+    }
+
+    /**
+     * Амортизированная очистка: раз в DEAD_VERSION_SWEEP_INTERVAL символов обрабатывается не более MAX_SWEPT_STATE_COUNT_PER_SWEEP состояний из очереди.
+     * Шаги построения в очереди не убывают, поэтому очистка останавливается на первом состоянии, мертвые версии которого еще могут быть видны читателям.
+     * Состояние, у которого остались мертвые версии, возвращается в конец очереди.
+     */
+    private void sweepDeadVersions(long currentBuildStep) {
+        // Мертвые версии текущей эпохи видимости видны читателям как минимум до ее публикации: просмотр читателей не нужен.
+        if (deadVersionSweepQueue.isEmpty() || deadVersionSweepQueue.peek() > parallelToBuildReadInfo.lastPublishedBuildStep) {
+            return;
+        }
+
+        long firstIrrelevantForAllReadersBuildStep = parallelToBuildReadInfo.getFirstIrrelevantForAllReadersBuildStep(currentBuildStep);
+
+        for (int i = 0;
+             i < MAX_SWEPT_STATE_COUNT_PER_SWEEP && !deadVersionSweepQueue.isEmpty() && deadVersionSweepQueue.peek() <= firstIrrelevantForAllReadersBuildStep;
+             ++i) {
+
+            deadVersionSweepQueue.dequeue();
+            long stateId = deadVersionSweepQueue.dequeue();
+
+            if (states.get(stateId).sweepDeadVersions(currentBuildStep)) {
+                deadVersionSweepQueue.enqueue(currentBuildStep);
+                deadVersionSweepQueue.enqueue(stateId);
+            }
+        }
+    }
+
+    /**
+     * @return количество хранимых (еще видимых читателям или еще не удаленных) недействительных версий переходов и обратных суффиксных ссылок.
+     */
+    long getRetainedDeadVersionCount() {
+        return parallelToBuildReadInfo.retainedDeadVersionCount;
+    }
+
+    /**
+     * Читатели видят суффиксный автомат по состоянию на последний опубликованный шаг построения
+     * и не видят версий, создаваемых на последующих шагах.
+     */
+    private void publishLastCompletedBuildStep() {
+        // Шаг построения совпадает с идентификатором состояния, созданного для прочитанного префикса исходной строки.
+        lastVisibleToReadBuildStep = lastOriginStateId;
+        parallelToBuildReadInfo.lastPublishedBuildStep = lastOriginStateId;
+
+        unpublishedCharCount = 0L;
+
+        if (visibilityEpochNanos != NO_VISIBILITY_EPOCH_TIMEOUT) {
+            lastPublishingNanoTime = System.nanoTime();
+        }
     }
 
     void onBuildCompleted() {
+        // Оптимизация после построения копирует суффиксный автомат по состоянию на последний опубликованный шаг построения.
+        publishLastCompletedBuildStep();
+
+        // Состояния больше не добавляются: емкость сверх их количества не нужна (см. presize).
+        if (!buildCompleted) {
+            states.trimToCapacity(stateCount);
+            stateAttributes.trimToCapacity(stateCount);
+        }
+
         // "Мгновенная" fine-grained блокировка (удерживается пренебрежимо малое время).
         synchronized (postbuildOptimizingMon) {
             buildCompleted = true;
@@ -165,15 +303,15 @@ final class SuffixAutomation {
                 return;
             }
 
-            if (parallelToBuildReadInfo.totalReadCount > 0) {
-                return;
-            }
-
             postbuildOptimizingStatus = PostbuildOptimizingStatus.POSTBUILD_OPTIMIZING_STARTED;
             startPostbuildOptimizingThread();
         }
     }
 
+    boolean isPostbuildOptimizingCompleted() {
+        return postbuildOptimizingCompleted;
+    }
+
     void stopPostbuildOptimizing() {
         // "Мгновенная" fine-grained блокировка (удерживается пренебрежимо малое время).
         synchronized (postbuildOptimizingMon) {
@@ -190,7 +328,12 @@ final class SuffixAutomation {
 
     // ****************************** //
 
-    private static final int HEAD_STATE_ID = 0;
+    private static final long HEAD_STATE_ID = 0L;
+
+    // Количество недействительных версий, создаваемых за шаг построения, в среднем ограничено константой.
+    // Очистка выполняется пачками, поскольку каждая очистка просматривает регистрацию читателей (см. ParallelToBuildingReadingInfo).
+    private static final int DEAD_VERSION_SWEEP_INTERVAL = 64;
+    private static final int MAX_SWEPT_STATE_COUNT_PER_SWEEP = 4 * DEAD_VERSION_SWEEP_INTERVAL;
 
     // ****************************** //
 
@@ -199,118 +342,144 @@ final class SuffixAutomation {
     }
 
     private void createHeadState() {
-        State headState = new BuildingTimeState(0, State.NO_STATE_ID, false, parallelToBuildReadInfo);
-        headState.setSuffixLink(State.NO_STATE_ID);
-        states.set(0, headState);
-        stateCount = 1;
-    }
-
-    private State getHeadState() {
-        return states.get(HEAD_STATE_ID);
+        states.ensureCapacity(1L);
+        stateAttributes.ensureCapacity(1L);
+        stateAttributes.setAttributes(HEAD_STATE_ID, 0L, State.NO_STATE_ID, false);
+        states.set(HEAD_STATE_ID, new BuildingTimeState(parallelToBuildReadInfo));
+        stateCount = 1L;
     }
 
     private void growStateArrayIfNeeded() {
-        // Поскольку за одну операцию расширения суффиксного автомата к нему добавляется не более двух состояний,
-        // расширяем массив состояний в том и только в том случае, когда stateCount > states.length() - 2.
-        if (stateCount > states.length() - 2) {
-            states = ArrayUtils.growAtomicReferenceArrayIfNeeded(states, stateCount + 2);
-        }
+        // За одну операцию расширения суффиксного автомата к нему добавляется не более двух состояний.
+        // Массивы состояний и их атрибутов растут добавлением сегментов, без копирования уже созданных состояний.
+        states.ensureCapacity(stateCount + 2L);
+        stateAttributes.ensureCapacity(stateCount + 2L);
     }
 
-    private void setSuffixLink(int sourceStateId, int targetStateId, int buildStep) {
-        states.get(sourceStateId).setSuffixLink(targetStateId);
+    private void setSuffixLink(long sourceStateId, long targetStateId, long buildStep) {
+        stateAttributes.setSuffixLink(sourceStateId, targetStateId);
         states.get(targetStateId).addInvertedSuffixLink(sourceStateId, buildStep);
     }
 
     /* ***** Чтение (поиск всех вхождений заданной строки в исходную строку). ***** */
 
     /**
-     * Ленивый итератор по всем вхождениям заданной строки в исходную строку.
+     * Ленивый итератор по всем вхождениям заданной строки в исходную строку:
+     * обход в ширину поддерева дерева суффиксных ссылок, корнем которого является состояние, соответствующее заданной строке.
+     * Каждое состояние, не являющееся клоном, соответствует ровно одному вхождению.
+     * Листья дерева суффиксных ссылок не являются клонами, поэтому непустая очередь обхода гарантирует наличие следующего вхождения.
+     *
+     * Очередь обхода хранит идентификаторы состояний и переиспользуется (см. StateIdQueue), поэтому обход не создает объектов.
+     * Поддеревья состояний, находящихся в очереди обхода, не пересекаются, поэтому при разделении передаются другому итератору целиком.
      */
-    private class SuffixAutomationOccurrencePosIterator implements OccurrencePosIterator {
+    private class SuffixAutomationOccurrencePosIterator extends AbstractOccurrencePosIterator {
 
         private SuffixAutomationOccurrencePosIterator(
-            int lastVisibleToReadBuildStep,
-            String soughtForCharSeq,
-            State soughtForCharSeqState) {
-
+            SegmentedAtomicReferenceArray<State> statesSnapshot,
+            BuildingTimeStateAttributes stateAttributesSnapshot,
+            long lastVisibleToReadBuildStep,
+            boolean parallelToBuildRead,
+            int readerSlot,
+            int soughtForCharSeqLength,
+            long soughtForCharSeqStateId) {
+
+            this.statesSnapshot = statesSnapshot;
+            this.stateAttributesSnapshot = stateAttributesSnapshot;
             this.lastVisibleToReadBuildStep = lastVisibleToReadBuildStep;
-            this.soughtForCharSeq = soughtForCharSeq;
-            this.dfsQueue = new LinkedList<>();
-            this.dfsQueue.add(soughtForCharSeqState);
-
-            // "Мгновенная" fine-grained блокировка (удерживается пренебрежимо малое время).
-            synchronized (postbuildOptimizingMon) {
-                if (buildCompleted) {
-                    parallelToBuildRead = false;
-                }
-                else {
-                    parallelToBuildRead = true;
-                    parallelToBuildReadInfo.onParallelToBuildingReadingStarted(lastVisibleToReadBuildStep);
-                }
-            }
+            this.parallelToBuildRead = parallelToBuildRead;
+            this.readerSlot = readerSlot;
+            this.soughtForCharSeqLength = soughtForCharSeqLength;
+            this.bfsQueue = StateIdQueue.acquire();
+            this.bfsQueue.enqueue(soughtForCharSeqStateId);
+        }
+
+        /**
+         * Итератор по отделенной части вхождений: разделяет с итератором splitFrom регистрацию читателя.
+         */
+        private SuffixAutomationOccurrencePosIterator(SuffixAutomationOccurrencePosIterator splitFrom) {
+            this.statesSnapshot = splitFrom.statesSnapshot;
+            this.stateAttributesSnapshot = splitFrom.stateAttributesSnapshot;
+            this.lastVisibleToReadBuildStep = splitFrom.lastVisibleToReadBuildStep;
+            this.parallelToBuildRead = splitFrom.parallelToBuildRead;
+            this.readerSlot = splitFrom.readerSlot;
+            this.soughtForCharSeqLength = splitFrom.soughtForCharSeqLength;
+            this.bfsQueue = StateIdQueue.acquire();
+            this.openPartCount = splitFrom.openPartCount;
         }
 
         @Override
         public boolean hasNext() {
-            return !dfsQueue.isEmpty();
+            return pendingOccurrencePos != NO_OCCURRENCE_POS || bfsQueue != null && !bfsQueue.isEmpty();
         }
 
         @Override
         public long getNext() {
             checkNotClosed();
             PreconditionUtils.checkState(hasNext());
-            long currentOccurrencePos = -1;
 
-            while (!dfsQueue.isEmpty()) {
-                State currentState = dfsQueue.poll();
-                Iterator<Integer> currentStateActualInvertedLinksIter = currentState.getActualInvertedSuffixLinksIterator(lastVisibleToReadBuildStep);
+            long occurrencePos = pendingOccurrencePos;
 
-                while (currentStateActualInvertedLinksIter.hasNext()) {
-                    dfsQueue.add(states.get(currentStateActualInvertedLinksIter.next()));
+            if (occurrencePos != NO_OCCURRENCE_POS) {
+                pendingOccurrencePos = NO_OCCURRENCE_POS;
+            }
+            else {
+                do {
+                    occurrencePos = visitNextState();
                 }
+                while (occurrencePos == NO_OCCURRENCE_POS);
+            }
 
-                if (!currentState.isClone()) {
-                    currentOccurrencePos = currentState.getMinSubstringEndPos() - soughtForCharSeq.length() + 1;
+            if (!hasNext()) {
+                close();
+            }
 
-                    while (!dfsQueue.isEmpty()) {
-                        currentState = dfsQueue.poll();
+            return occurrencePos;
+        }
 
-                        if (!currentState.isClone()) {
-                            dfsQueue.addFirst(currentState);
-                            break;
-                        }
-                        else {
-                            currentStateActualInvertedLinksIter = currentState.getActualInvertedSuffixLinksIterator(lastVisibleToReadBuildStep);
+        /**
+         * Передает новому итератору каждое второе состояние очереди обхода вместе с его поддеревом.
+         * Если в очереди одно состояние, оно предварительно заменяется своими потомками
+         * (а его вхождение, если оно не клон, откладывается до следующего вызова getNext).
+         */
+        @Override
+        public OccurrencePosIterator trySplit() {
+            if (bfsQueue == null) {
+                return null;
+            }
 
-                            while (currentStateActualInvertedLinksIter.hasNext()) {
-                                dfsQueue.add(states.get(currentStateActualInvertedLinksIter.next()));
-                            }
-                        }
-                    }
+            while (bfsQueue.getSize() == 1 && pendingOccurrencePos == NO_OCCURRENCE_POS) {
+                pendingOccurrencePos = visitNextState();
+            }
 
-                    if (dfsQueue.isEmpty()) {
-                        close();
-                    }
+            int queueSize = bfsQueue.getSize();
 
-                    break;
-                }
+            if (queueSize < 2) {
+                return null;
+            }
+
+            if (openPartCount == null) {
+                openPartCount = new AtomicInteger(1);
             }
 
-            return currentOccurrencePos;
+            openPartCount.incrementAndGet();
+            SuffixAutomationOccurrencePosIterator splitIter = new SuffixAutomationOccurrencePosIterator(this);
+
+            for (int i = 0; i < queueSize; ++i) {
+                (i % 2 == 0 ? bfsQueue : splitIter.bfsQueue).enqueue(bfsQueue.dequeue());
+            }
+
+            return splitIter;
         }
 
         @Override
         public void close() {
             checkNotClosed();
-            dfsQueue.clear();
+            bfsQueue.release();
+            bfsQueue = null;
+            pendingOccurrencePos = NO_OCCURRENCE_POS;
 
-            // "Мгновенная" fine-grained блокировка (удерживается пренебрежимо малое время).
-            synchronized (postbuildOptimizingMon) {
-                if (parallelToBuildRead) {
-                    parallelToBuildReadInfo.onParallelToBuildingReadingCompleted(lastVisibleToReadBuildStep);
-                    startPostbuildOptimizing();
-                }
+            if (parallelToBuildRead && (openPartCount == null || openPartCount.decrementAndGet() == 0)) {
+                parallelToBuildReadInfo.onParallelToBuildingReadingCompleted(lastVisibleToReadBuildStep, readerSlot);
             }
 
             closed = true;
@@ -318,58 +487,251 @@ final class SuffixAutomation {
 
         // ****************************** //
 
+        @Override
+        protected int getNextUnchecked(long[] occurrencePositions, int offset, int maxCount) {
+            int count = 0;
+
+            if (pendingOccurrencePos != NO_OCCURRENCE_POS) {
+                occurrencePositions[offset + count++] = pendingOccurrencePos;
+                pendingOccurrencePos = NO_OCCURRENCE_POS;
+            }
+
+            while (count < maxCount && !bfsQueue.isEmpty()) {
+                long occurrencePos = visitNextState();
+
+                if (occurrencePos != NO_OCCURRENCE_POS) {
+                    occurrencePositions[offset + count++] = occurrencePos;
+                }
+            }
+
+            if (!hasNext()) {
+                close();
+            }
+
+            return count;
+        }
+
+        /**
+         * Извлекает состояние из очереди обхода и ставит в очередь его потомков.
+         *
+         * @return позиция вхождения, соответствующего состоянию, или NO_OCCURRENCE_POS, если состояние - клон.
+         */
+        private long visitNextState() {
+            long currentStateId = bfsQueue.dequeue();
+            statesSnapshot.get(currentStateId).enqueueActualInvertedSuffixLinksTo(bfsQueue, lastVisibleToReadBuildStep);
+
+            return
+                !stateAttributesSnapshot.isClone(currentStateId) ?
+                stateAttributesSnapshot.getMinSubstringEndPos(currentStateId) - soughtForCharSeqLength + 1 :
+                NO_OCCURRENCE_POS;
+        }
+
         private void checkNotClosed() {
             PreconditionUtils.checkState(!closed);
         }
 
         // ****************************** //
 
-        private final int lastVisibleToReadBuildStep;
-        private final String soughtForCharSeq;
-        private final Deque<State> dfsQueue;
+        private final SegmentedAtomicReferenceArray<State> statesSnapshot;
+        private final BuildingTimeStateAttributes stateAttributesSnapshot;
+        private final long lastVisibleToReadBuildStep;
+        private final int soughtForCharSeqLength;
+        private StateIdQueue bfsQueue;
+        private long pendingOccurrencePos = NO_OCCURRENCE_POS;
         private final boolean parallelToBuildRead;
+        private final int readerSlot;
+
+        // Количество незакрытых частей, на которые разделен итератор (null, пока итератор не разделялся).
+        // Регистрация читателя отменяется при закрытии последней части.
+        private AtomicInteger openPartCount;
         private boolean closed;
     }
 
     // ****************************** //
 
-    OccurrencePosIterator getOccurrencePosIterator(String soughtForCharSeq) {
-        int lastVisibleToReadBuildStep = lastVisibleToReadStateId;
-        State soughtForCharSeqState = findStateForSoughtForCharSequence(soughtForCharSeq, lastVisibleToReadBuildStep);
+    /**
+     * Символами суффиксного автомата могут быть как символы UTF-16, так и байты (см. MainMemoryByteSuffixAutomationIndex),
+     * поэтому искомая строка задается как CharSequence.
+     */
+    OccurrencePosIterator getOccurrencePosIterator(CharSequence soughtForCharSeq) {
+        DefinitiveSuffixAutomation definitiveAutomation = publishedDefinitiveAutomation;
+
+        if (definitiveAutomation != null) {
+            return definitiveAutomation.getOccurrencePosIterator(soughtForCharSeq);
+        }
+
+        // Читатель регистрируется до того, как начнет читать суффиксный автомат,
+        // чтобы ни одна из видимых ему версий переходов и обратных суффиксных ссылок не была удалена в ходе чтения.
+        // Регистрация не требует блокировок (см. ParallelToBuildingReadingInfo).
+        // После завершения построения версии не удаляются, и регистрация не нужна.
+        boolean parallelToBuildRead = !buildCompleted;
+        long lastVisibleToReadBuildStep;
+        int readerSlot = ParallelToBuildingReadingInfo.OVERFLOW_READER_SLOT;
+
+        while (true) {
+            lastVisibleToReadBuildStep = this.lastVisibleToReadBuildStep;
+
+            if (!parallelToBuildRead) {
+                break;
+            }
+
+            readerSlot = parallelToBuildReadInfo.onParallelToBuildingReadingStarted(lastVisibleToReadBuildStep);
+
+            // Если за время регистрации был опубликован следующий шаг построения,
+            // поток построения мог не заметить регистрацию, поэтому читатель регистрируется повторно.
+            if (this.lastVisibleToReadBuildStep == lastVisibleToReadBuildStep) {
+                break;
+            }
+
+            parallelToBuildReadInfo.onParallelToBuildingReadingCompleted(lastVisibleToReadBuildStep, readerSlot);
+        }
+
+        // Читатель до конца чтения использует набор состояний, актуальный на момент начала чтения (эпоху).
+        // Набор читается после шага построения, поэтому содержит все видимые на этом шаге состояния.
+        // Оптимизация после построения не изменяет состояния, видимые начатым ранее операциям чтения,
+        // а освобождает набор только после публикации окончательного суффиксного автомата.
+        // Атрибуты состояний читаются до набора и освобождаются после него (см. publishDefinitiveAutomation),
+        // поэтому при непустом наборе они тоже доступны.
+        BuildingTimeStateAttributes stateAttributesSnapshot = stateAttributes;
+        SegmentedAtomicReferenceArray<State> statesSnapshot = states;
+
+        if (statesSnapshot == null) {
+            if (parallelToBuildRead) {
+                parallelToBuildReadInfo.onParallelToBuildingReadingCompleted(lastVisibleToReadBuildStep, readerSlot);
+            }
+
+            return publishedDefinitiveAutomation.getOccurrencePosIterator(soughtForCharSeq);
+        }
+
+        long soughtForCharSeqStateId = findStateForSoughtForCharSequence(statesSnapshot, soughtForCharSeq, lastVisibleToReadBuildStep);
+
+        if (soughtForCharSeqStateId == State.NO_STATE_ID) {
+            if (parallelToBuildRead) {
+                parallelToBuildReadInfo.onParallelToBuildingReadingCompleted(lastVisibleToReadBuildStep, readerSlot);
+            }
 
-        if (soughtForCharSeqState == null) {
             return EmptyOccurrencePosIterator.INSTANCE;
         }
 
-        return new SuffixAutomationOccurrencePosIterator(lastVisibleToReadBuildStep, soughtForCharSeq, soughtForCharSeqState);
+        return
+            new SuffixAutomationOccurrencePosIterator(
+                statesSnapshot,
+                stateAttributesSnapshot,
+                lastVisibleToReadBuildStep,
+                parallelToBuildRead,
+                readerSlot,
+                soughtForCharSeq.length(),
+                soughtForCharSeqStateId);
     }
 
-    private State findStateForSoughtForCharSequence(String soughtForCharSeq, int lastVisibleToReadBuildStep) {
-        if (StringUtils.isNullOrEmpty(soughtForCharSeq)) {
-            return null;
+    /**
+     * После оптимизации - слиянием по дереву минимумов (см. DefinitiveSuffixAutomation) без просмотра вхождений сверх запрошенных,
+     * до ее завершения - обходом и сортировкой всех вхождений.
+     */
+    OccurrencePosIterator getSortedOccurrencePosIterator(CharSequence soughtForCharSeq, long offset, long limit) {
+        DefinitiveSuffixAutomation definitiveAutomation = publishedDefinitiveAutomation;
+
+        if (definitiveAutomation != null) {
+            return definitiveAutomation.getSortedOccurrencePosIterator(soughtForCharSeq, offset, limit);
         }
 
-        State currentState = getHeadState();
+        return ArrayOccurrencePosIterator.sorted(getOccurrencePosIterator(soughtForCharSeq), offset, limit);
+    }
 
-        for (int i = 0; i < soughtForCharSeq.length(); ++i) {
-            char currentChar = soughtForCharSeq.charAt(i);
-            int nextStateId = currentState.getActualTransitionTargetStateId(currentChar, lastVisibleToReadBuildStep);
+    /**
+     * После оптимизации - за время, пропорциональное длине строки soughtForCharSeq,
+     * до ее завершения - обходом всех вхождений.
+     */
+    long getOccurrenceCount(CharSequence soughtForCharSeq) {
+        DefinitiveSuffixAutomation definitiveAutomation = publishedDefinitiveAutomation;
 
-            if (nextStateId != State.NO_STATE_ID) {
-                currentState = states.get(nextStateId);
-            }
-            else {
-                return null;
+        if (definitiveAutomation != null) {
+            return definitiveAutomation.getOccurrenceCount(soughtForCharSeq);
+        }
+
+        OccurrencePosIterator occurrencePosIterator = getOccurrencePosIterator(soughtForCharSeq);
+        long occurrenceCount = 0L;
+
+        while (occurrencePosIterator.hasNext()) {
+            occurrencePosIterator.getNext();
+            ++occurrenceCount;
+        }
+
+        return occurrenceCount;
+    }
+
+    /**
+     * После оптимизации - за время, пропорциональное длине строки soughtForCharSeq,
+     * до ее завершения - обходом всех вхождений.
+     */
+    long getFirstOccurrencePos(CharSequence soughtForCharSeq) {
+        DefinitiveSuffixAutomation definitiveAutomation = publishedDefinitiveAutomation;
+
+        if (definitiveAutomation != null) {
+            return definitiveAutomation.getFirstOccurrencePos(soughtForCharSeq);
+        }
+
+        OccurrencePosIterator occurrencePosIterator = getOccurrencePosIterator(soughtForCharSeq);
+        long firstOccurrencePos = NO_OCCURRENCE_POS;
+
+        while (occurrencePosIterator.hasNext()) {
+            long occurrencePos = occurrencePosIterator.getNext();
+
+            if (firstOccurrencePos == NO_OCCURRENCE_POS || occurrencePos < firstOccurrencePos) {
+                firstOccurrencePos = occurrencePos;
             }
         }
 
-        return currentState;
+        return firstOccurrencePos;
+    }
+
+    /**
+     * После оптимизации - за время, пропорциональное длине строки soughtForCharSeq,
+     * до ее завершения - обходом всех вхождений.
+     */
+    long getLastOccurrencePos(CharSequence soughtForCharSeq) {
+        DefinitiveSuffixAutomation definitiveAutomation = publishedDefinitiveAutomation;
+
+        if (definitiveAutomation != null) {
+            return definitiveAutomation.getLastOccurrencePos(soughtForCharSeq);
+        }
+
+        OccurrencePosIterator occurrencePosIterator = getOccurrencePosIterator(soughtForCharSeq);
+        long lastOccurrencePos = NO_OCCURRENCE_POS;
+
+        while (occurrencePosIterator.hasNext()) {
+            lastOccurrencePos = max(lastOccurrencePos, occurrencePosIterator.getNext());
+        }
+
+        return lastOccurrencePos;
+    }
+
+    private long findStateForSoughtForCharSequence(
+        SegmentedAtomicReferenceArray<State> statesSnapshot,
+        CharSequence soughtForCharSeq,
+        long lastVisibleToReadBuildStep) {
+
+        if (soughtForCharSeq == null || soughtForCharSeq.length() == 0) {
+            return State.NO_STATE_ID;
+        }
+
+        long currentStateId = HEAD_STATE_ID;
+
+        for (int i = 0; i < soughtForCharSeq.length() && currentStateId != State.NO_STATE_ID; ++i) {
+            char currentChar = soughtForCharSeq.charAt(i);
+            currentStateId = statesSnapshot.get(currentStateId).getActualTransitionTargetStateId(currentChar, lastVisibleToReadBuildStep);
+        }
+
+        return currentStateId;
     }
 
     /* ***** Оптимизация после построения (и завершения всех параллельных построению операций чтения). ***** */
 
     private static final String POSTBUILD_OPTIMIZATION_THREAD_NAME_PATTERN = "Suffix Automation Postbuild Optimizer [source file pathname = \"{0}\"]";
 
+    // Оценка для 64-разрядной JVM со сжатыми указателями (см. logRequiredMemory).
+    private static final long STATE_REFERENCE_MEMORY_IN_BYTES = 4L;
+
     // ****************************** //
 
     private class PostbuildOptimization implements Runnable {
@@ -378,20 +740,17 @@ final class SuffixAutomation {
         public void run() {
             while (!postbuildOptimizingCompleted && !interrupted()) {
                 try {
-                    if (globalInvertedSuffixLinkArray == null) {
-                        // Расширяем постепенно, поскольку в этом случае, учитывая одновременное удаление состояний времени выполнения,
-                        // мы сможем достичь гораздо меньшего пикового потребления памяти,
-                        // чем в том случае, когда мы установили бы изначальную емкость равной stateCount (гарантированный инфимум).
-                        globalInvertedSuffixLinkArray = new int[256];
-                        globalTransitionCharArray = new char[256];
-                        globalTransitionTargetStateIdArray = new int[256];
+                    if (definitiveAutomation == null) {
+                        allocateDefinitiveAutomation();
                     }
 
-                    postbuildOptimizeNextState();
-
-                    if (postbuildOptimizedStateCount == stateCount) {
-                        postbuildOptimizingCompleted = true;
-                    }
+                    // Копирование идемпотентно, поэтому после прерывания оптимизации выполняется повторно целиком.
+                    runPostbuildOptimizingTask(new StateCopyingTask(HEAD_STATE_ID, stateCount));
+                    completeDefinitiveAutomation();
+                    publishDefinitiveAutomation();
+                }
+                catch (InterruptedException exception) {
+                    return;
                 }
                 catch (Exception exception) {
                     Slf4jUtils.logException(logger, exception);
@@ -407,6 +766,118 @@ final class SuffixAutomation {
         }
     }
 
+    /**
+     * Задача оптимизации после построения над диапазоном идентификаторов состояний [firstStateId, followingLastStateId).
+     * Диапазоны, содержащие более MAX_LEAF_STATE_RANGE_LENGTH состояний, делятся пополам.
+     * Задачи над непересекающимися диапазонами независимы и выполняются пулом postbuildOptimizingPool.
+     * Задачи не сериализуются.
+     */
+    @SuppressWarnings("serial")
+    private abstract class StateRangeTask extends RecursiveAction {
+
+        StateRangeTask(long firstStateId, long followingLastStateId) {
+            this.firstStateId = firstStateId;
+            this.followingLastStateId = followingLastStateId;
+        }
+
+        @Override
+        protected void compute() {
+            if (followingLastStateId - firstStateId <= MAX_LEAF_STATE_RANGE_LENGTH) {
+                for (long stateId = firstStateId; stateId < followingLastStateId && !postbuildOptimizingCancelled; ++stateId) {
+                    handleState(stateId);
+                }
+            }
+            else {
+                // Граница кратна 64 (см. DefinitiveSuffixAutomation.copyState).
+                long middleStateId = ((firstStateId + followingLastStateId) >>> 1) & ~(Long.SIZE - 1L);
+                invokeAll(makeSubtask(firstStateId, middleStateId), makeSubtask(middleStateId, followingLastStateId));
+            }
+        }
+
+        abstract void handleState(long stateId);
+        abstract StateRangeTask makeSubtask(long firstStateId, long followingLastStateId);
+
+        // ****************************** //
+
+        private static final int MAX_LEAF_STATE_RANGE_LENGTH = 4096;
+
+        private final long firstStateId;
+        private final long followingLastStateId;
+    }
+
+    /**
+     * Подсчитывает количества обратных суффиксных ссылок и переходов состояний,
+     * а также количество клонов и память, занимаемую состояниями времени построения.
+     */
+    @SuppressWarnings("serial")
+    private final class StateCountingTask extends StateRangeTask {
+
+        StateCountingTask(long firstStateId, long followingLastStateId) {
+            super(firstStateId, followingLastStateId);
+        }
+
+        @Override
+        protected void compute() {
+            super.compute();
+
+            // Итоги диапазона добавляются однократно, а не по каждому состоянию.
+            if (rangeCloneStateCount > 0L) {
+                countedCloneStateCount.addAndGet(rangeCloneStateCount);
+            }
+
+            if (rangeStateMemoryInBytes > 0L) {
+                countedBuildingTimeStateMemoryInBytes.addAndGet(rangeStateMemoryInBytes);
+            }
+        }
+
+        @Override
+        void handleState(long stateId) {
+            State state = states.get(stateId);
+
+            definitiveAutomation.setStateCounts(
+                stateId,
+                state.getActualInvertedSuffixLinkCount(lastVisibleToReadBuildStep),
+                state.getActualTransitionCount(lastVisibleToReadBuildStep));
+
+            if (stateAttributes.isClone(stateId)) {
+                ++rangeCloneStateCount;
+            }
+
+            rangeStateMemoryInBytes += state.getMemoryInBytes();
+        }
+
+        @Override
+        StateRangeTask makeSubtask(long firstStateId, long followingLastStateId) {
+            return new StateCountingTask(firstStateId, followingLastStateId);
+        }
+
+        // ****************************** //
+
+        private long rangeCloneStateCount;
+        private long rangeStateMemoryInBytes;
+    }
+
+    /**
+     * Копирует состояния времени построения в окончательный суффиксный автомат.
+     */
+    @SuppressWarnings("serial")
+    private final class StateCopyingTask extends StateRangeTask {
+
+        StateCopyingTask(long firstStateId, long followingLastStateId) {
+            super(firstStateId, followingLastStateId);
+        }
+
+        @Override
+        void handleState(long stateId) {
+            definitiveAutomation.copyState(stateId, states.get(stateId), stateAttributes, lastVisibleToReadBuildStep);
+        }
+
+        @Override
+        StateRangeTask makeSubtask(long firstStateId, long followingLastStateId) {
+            return new StateCopyingTask(firstStateId, followingLastStateId);
+        }
+    }
+
     // ****************************** //
 
     private void initPostbuildOptimizingStatus() {
@@ -442,65 +913,109 @@ final class SuffixAutomation {
         }
     }
 
-    private void postbuildOptimizeNextState() {
-        growGlobalInvertedSuffixLinkArrayIfNeeded();
-        growGlobalTransitionArrayIfNeeded();
-
-        State buildingTimeState = states.get(postbuildOptimizedStateCount);
-        DefinitiveState definitiveState =
-            new DefinitiveState(
-                    buildingTimeState,
-                    globalInvertedSuffixLinkArray,
-                    globalInvertedSuffixLinkArrayFirstFreePos,
-                    globalTransitionCharArray,
-                    globalTransitionTargetStateIdArray,
-                    globalTransitionArrayFirstFreePos,
-                    lastVisibleToReadStateId);
-        states.set(postbuildOptimizedStateCount, definitiveState);
-
-        globalInvertedSuffixLinkArrayFirstFreePos = definitiveState.getGlobalInvertedSuffixLinkArrayFollowingLastPos();
-        globalTransitionArrayFirstFreePos = definitiveState.getGlobalTransitionArrayFollowingLastPos();
-        ++postbuildOptimizedStateCount;
-    }
-
-    private void growGlobalInvertedSuffixLinkArrayIfNeeded() {
-        int nextStateActualInvertedSuffixLinkCount = states.get(postbuildOptimizedStateCount).getActualInvertedSuffixLinkCount(lastVisibleToReadStateId);
-        int globalInvertedSuffixLinkArrayFreeCapacity = globalInvertedSuffixLinkArray.length - globalInvertedSuffixLinkArrayFirstFreePos;
-
-        if (globalInvertedSuffixLinkArrayFreeCapacity < nextStateActualInvertedSuffixLinkCount) {
-            globalInvertedSuffixLinkArray =
-                ArrayUtils.growIntArrayIfNeeded(
-                    globalInvertedSuffixLinkArray,
-                    globalInvertedSuffixLinkArray.length + (nextStateActualInvertedSuffixLinkCount - globalInvertedSuffixLinkArrayFreeCapacity));
+    /**
+     * Массивы окончательного суффиксного автомата выделяются однократно и точно по размеру.
+     * Смещения состояний в массивах переходов и обратных суффиксных ссылок - префиксные суммы их количеств -
+     * вычисляются заранее, что позволяет заполнять массивы параллельно по непересекающимся диапазонам состояний.
+     */
+    private void allocateDefinitiveAutomation() throws InterruptedException, IOException {
+        alphabet.compact();
+        definitiveAutomation = new DefinitiveSuffixAutomation(stateCount, alphabet, definitiveAutomationStorage, definitiveAutomationStorageDirectory);
+        boolean allocated = false;
 
-            for (int i = 0; i < postbuildOptimizedStateCount; ++i) {
-                ((DefinitiveState)states.get(i)).setGlobalInvertedSuffixLinkArray(globalInvertedSuffixLinkArray);
+        try {
+            countedCloneStateCount.set(0L);
+            countedBuildingTimeStateMemoryInBytes.set(0L);
+            runPostbuildOptimizingTask(new StateCountingTask(HEAD_STATE_ID, stateCount));
+            definitiveAutomation.computeOffsets();
+            logRequiredMemory();
+            definitiveAutomation.allocateTransitionsAndInvertedSuffixLinks();
+            allocated = true;
+        }
+        finally {
+            // После прерывания или ошибки выделение выполняется повторно целиком.
+            if (!allocated) {
+                definitiveAutomation = null;
             }
         }
     }
 
-    private void growGlobalTransitionArrayIfNeeded() {
-        int nextStateActualTransitionCount = states.get(postbuildOptimizedStateCount).getActualTransitionCount(lastVisibleToReadStateId);
-        int globalTransitionArrayFreeCapacity = globalTransitionCharArray.length - globalTransitionArrayFirstFreePos;
+    /**
+     * Пиковое потребление памяти оптимизацией после построения сообщается до выделения основных массивов
+     * окончательного суффиксного автомата (выделены только массивы количеств, по которым вычисляются их размеры):
+     * окончательный суффиксный автомат сосуществует с состояниями времени построения,
+     * которые могут использоваться начатыми ранее операциями чтения.
+     */
+    private void logRequiredMemory() {
+        long occurrenceEndPositionCount = stateCount - countedCloneStateCount.get();
+        long definitiveAutomationMemoryInBytes = definitiveAutomation.getRequiredMemoryInBytes(occurrenceEndPositionCount);
+        long buildingTimeMemoryInBytes =
+            countedBuildingTimeStateMemoryInBytes.get() +
+            stateAttributes.getMemoryInBytes() +
+            states.getCapacity() * STATE_REFERENCE_MEMORY_IN_BYTES;
+
+        logger.info(
+            "Postbuild optimizing of \"{}\": {} states ({} retained dead versions), {} chars in alphabet, {} inverted suffix links, {} transitions, " +
+                "peak memory {} bytes: {} bytes for definitive automation ({}) and {} bytes for build-time states",
+            sourceFilePath,
+            stateCount,
+            getRetainedDeadVersionCount(),
+            alphabet.getSize(),
+            definitiveAutomation.getInvertedSuffixLinkCount(),
+            definitiveAutomation.getTransitionCount(),
+            definitiveAutomationMemoryInBytes + buildingTimeMemoryInBytes,
+            definitiveAutomationMemoryInBytes,
+            definitiveAutomationStorage,
+            buildingTimeMemoryInBytes);
+    }
 
-        if (globalTransitionArrayFreeCapacity < nextStateActualTransitionCount) {
-            globalTransitionCharArray =
-                ArrayUtils.growCharArrayIfNeeded(
-                    globalTransitionCharArray,
-                    globalTransitionCharArray.length + (nextStateActualTransitionCount - globalTransitionArrayFreeCapacity));
+    /**
+     * Строит вспомогательные структуры окончательного суффиксного автомата по его скопированным состояниям.
+     */
+    private void completeDefinitiveAutomation() throws IOException {
+        definitiveAutomation.buildDenseTransitionTables();
+        definitiveAutomation.computeOccurrenceStatistics();
+
+        logger.info(
+            "Postbuild optimizing of \"{}\": {} dense transition tables, {} bytes for definitive automation",
+            sourceFilePath,
+            definitiveAutomation.getDenseTransitionTableCount(),
+            definitiveAutomation.getMemoryInBytes());
+    }
 
-            for (int i = 0; i < postbuildOptimizedStateCount; ++i) {
-                ((DefinitiveState)states.get(i)).setGlobalTransitionCharArray(globalTransitionCharArray);
-            }
+    /**
+     * Новая эпоха: последующие операции чтения используют окончательный суффиксный автомат.
+     * Набор состояний времени построения освобождается сборщиком мусора после завершения всех использующих его операций чтения.
+     */
+    private void publishDefinitiveAutomation() {
+        // "Мгновенная" fine-grained блокировка (удерживается пренебрежимо малое время).
+        synchronized (postbuildOptimizingMon) {
+            definitiveAutomation.releasePostbuildOptimizingArrays();
+            publishedDefinitiveAutomation = definitiveAutomation;
+            states = null;
+            stateAttributes = null;
+            postbuildOptimizingCompleted = true;
+        }
+    }
 
-            globalTransitionTargetStateIdArray =
-                ArrayUtils.growIntArrayIfNeeded(
-                    globalTransitionTargetStateIdArray,
-                    globalTransitionTargetStateIdArray.length + (nextStateActualTransitionCount - globalTransitionArrayFreeCapacity));
+    /**
+     * Выполняет задачу в пуле postbuildOptimizingPool и ожидает ее завершения.
+     * При прерывании потока оптимизации задача останавливается до выхода из метода.
+     */
+    private void runPostbuildOptimizingTask(StateRangeTask task) throws InterruptedException {
+        postbuildOptimizingCancelled = false;
+        postbuildOptimizingPool.execute(task);
 
-            for (int i = 0; i < postbuildOptimizedStateCount; ++i) {
-                ((DefinitiveState)states.get(i)).setGlobalTransitionTargetStateIdArray(globalTransitionTargetStateIdArray);
-            }
+        try {
+            task.get();
+        }
+        catch (InterruptedException exception) {
+            postbuildOptimizingCancelled = true;
+            task.quietlyJoin();
+            throw exception;
+        }
+        catch (ExecutionException exception) {
+            throw ExceptionUtils.wrapInRuntimeException(exception);
         }
     }
 
@@ -508,23 +1023,42 @@ final class SuffixAutomation {
 
     private Path sourceFilePath;
 
-    private volatile AtomicReferenceArray<State> states = new AtomicReferenceArray<>(INITIAL_STATE_ARRAY_CAPACITY);
-    private volatile int stateCount;
-    private int lastOriginStateId;
-    private volatile int lastVisibleToReadStateId;
+    private volatile SegmentedAtomicReferenceArray<State> states = new SegmentedAtomicReferenceArray<>();
+    private volatile BuildingTimeStateAttributes stateAttributes = new BuildingTimeStateAttributes();
+    private volatile long stateCount;
+    private long lastOriginStateId;
+
+    // Состояния, у которых могут быть мертвые версии, с шагами построения (используется только потоком построения).
+    private final StateIdQueue deadVersionSweepQueue = new StateIdQueue();
+    private int unsweptCharCount;
 
-    private boolean buildCompleted;
+    // Пополняется потоком построения, нумеруется при оптимизации после построения.
+    private final Alphabet alphabet = new Alphabet();
+    private volatile long lastVisibleToReadBuildStep;
+
+    // Эпоха видимости (используются только потоком построения).
+    private long visibilityEpochCharCount = MainMemorySuffixAutomationIndexBuilderSettings.DEFAULT_VISIBILITY_EPOCH_CHAR_COUNT;
+    private long visibilityEpochNanos = NO_VISIBILITY_EPOCH_TIMEOUT;
+    private long unpublishedCharCount;
+    private long lastPublishingNanoTime = System.nanoTime();
+
+    private volatile boolean buildCompleted;
 
     /* ***** Оптимизация после построения (и завершения всех параллельных построению операций чтения). ***** */
 
     private volatile PostbuildOptimizingStatus postbuildOptimizingStatus;
-    private int[] globalInvertedSuffixLinkArray;
-    private int globalInvertedSuffixLinkArrayFirstFreePos;
-    private char[] globalTransitionCharArray;
-    private int[] globalTransitionTargetStateIdArray;
-    private int globalTransitionArrayFirstFreePos;
-    private int postbuildOptimizedStateCount;
+    private DefinitiveSuffixAutomation definitiveAutomation;
+    private volatile DefinitiveSuffixAutomation publishedDefinitiveAutomation;
+    private final ForkJoinPool postbuildOptimizingPool;
+    private final DefinitiveSuffixAutomationStorage definitiveAutomationStorage;
+    private final File definitiveAutomationStorageDirectory;
+    private volatile boolean postbuildOptimizingCancelled;
     private volatile boolean postbuildOptimizingCompleted;
+
+    // Итоги подсчета состояний (см. StateCountingTask).
+    private final AtomicLong countedCloneStateCount = new AtomicLong();
+    private final AtomicLong countedBuildingTimeStateMemoryInBytes = new AtomicLong();
+
     private ParallelToBuildingReadingInfo parallelToBuildReadInfo;
     private Thread postbuildOptimizingThread;
     private final Object postbuildOptimizingMon = new Object();
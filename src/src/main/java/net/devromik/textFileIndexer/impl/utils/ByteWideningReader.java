@@ -0,0 +1,75 @@
+package net.devromik.textFileIndexer.impl.utils;
+
+import java.io.*;
+import static java.lang.Math.min;
+import static net.devromik.textFileIndexer.utils.PreconditionUtils.checkNotNull;
+
+/**
+ * Читает байты потока блоками и расширяет каждый байт b до символа (char)(b & 0xFF) без CharsetDecoder,
+ * т.е. выдает те же символы, что и InputStreamReader в кодировке ISO-8859-1.
+ * Не является потокобезопасным.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class ByteWideningReader extends Reader {
+
+    /**
+     * @throws java.lang.NullPointerException если in == null.
+     */
+    public ByteWideningReader(InputStream in) {
+        checkNotNull(in);
+        this.in = in;
+    }
+
+    /* ***** Реализация Reader. ***** */
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        checkOpen();
+
+        if (offset < 0 || length < 0 || offset + length > chars.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (length == 0) {
+            return 0;
+        }
+
+        // Блок байт выделяется однократно и используется повторно.
+        if (readingBlock == null || readingBlock.length < min(length, MAX_READING_BLOCK_LENGTH)) {
+            readingBlock = new byte[min(length, MAX_READING_BLOCK_LENGTH)];
+        }
+
+        int readByteCount = in.read(readingBlock, 0, min(length, readingBlock.length));
+
+        for (int i = 0; i < readByteCount; ++i) {
+            chars[offset + i] = (char)(readingBlock[i] & 0xFF);
+        }
+
+        return readByteCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+            readingBlock = null;
+        }
+    }
+
+    // ****************************** //
+
+    private void checkOpen() throws IOException {
+        if (in == null) {
+            throw new IOException("Reader closed");
+        }
+    }
+
+    // ****************************** //
+
+    private static final int MAX_READING_BLOCK_LENGTH = 1 << 16;
+
+    private InputStream in;
+    private byte[] readingBlock;
+}
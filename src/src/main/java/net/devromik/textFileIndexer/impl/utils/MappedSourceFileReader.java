@@ -0,0 +1,343 @@
+package net.devromik.textFileIndexer.impl.utils;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import static java.lang.Math.min;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.CodingErrorAction.REPLACE;
+import static net.devromik.textFileIndexer.utils.PreconditionUtils.*;
+
+/**
+ * Читает символы исходного файла, отображенного в память окнами по mappingWindowLength байт.
+ * Байты декодируются непосредственно из MappedByteBuffer в символьный буфер читающего,
+ * минуя промежуточные байтовые и символьные буферы InputStreamReader.
+ *
+ * Для однобайтовых кодировок (ISO-8859-1, US-ASCII и т.п.) вместо CharsetDecoder используется таблица декодирования.
+ *
+ * Некорректные и неотображаемые последовательности байт заменяются так же, как в InputStreamReader.
+ * Не является потокобезопасным.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class MappedSourceFileReader extends Reader {
+
+    // Окно должно вмещать байтовое представление любого символа,
+    // чтобы декодирование на границе окон всегда продвигалось вперед.
+    public static final int MIN_MAPPING_WINDOW_LENGTH = 16;
+    public static final int DEFAULT_MAPPING_WINDOW_LENGTH = 1 << 26;
+
+    // ****************************** //
+
+    public MappedSourceFileReader(File sourceFile, Charset sourceFileEncoding) throws IOException {
+        this(sourceFile, sourceFileEncoding, DEFAULT_MAPPING_WINDOW_LENGTH);
+    }
+
+    /**
+     * @throws java.lang.IllegalArgumentException если mappingWindowLength < MIN_MAPPING_WINDOW_LENGTH.
+     */
+    public MappedSourceFileReader(File sourceFile, Charset sourceFileEncoding, int mappingWindowLength) throws IOException {
+        checkNotNull(sourceFile);
+        checkNotNull(sourceFileEncoding);
+        checkArgument(mappingWindowLength >= MIN_MAPPING_WINDOW_LENGTH);
+
+        this.mappingWindowLength = mappingWindowLength;
+        this.decodingTable = makeDecodingTable(sourceFileEncoding);
+        this.wideningDecoding = decodingTable != null && isWideningDecodingTable(decodingTable);
+        this.decoder = decodingTable == null ? sourceFileEncoding.newDecoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE) : null;
+
+        RandomAccessFile sourceFileAccess = new RandomAccessFile(sourceFile, "r");
+
+        try {
+            this.sourceFileChannel = sourceFileAccess.getChannel();
+            this.sourceFileLength = sourceFileChannel.size();
+            mapNextWindow(0L);
+        }
+        catch (IOException exception) {
+            sourceFileAccess.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Быстрый предварительный проход: количество символов, которое будет прочитано из исходного файла в кодировке sourceFileEncoding.
+     * Для однобайтовых кодировок равно длине файла и не требует чтения,
+     * для остальных файл декодируется (без сохранения символов) так же, как при чтении.
+     *
+     * @throws java.io.InterruptedIOException если поток прерван во время декодирования.
+     */
+    public static long countChars(File sourceFile, Charset sourceFileEncoding) throws IOException {
+        checkNotNull(sourceFile);
+        checkNotNull(sourceFileEncoding);
+
+        if (makeDecodingTable(sourceFileEncoding) != null) {
+            return sourceFile.length();
+        }
+
+        try (Reader reader = new MappedSourceFileReader(sourceFile, sourceFileEncoding)) {
+            char[] countingBlock = new char[CHAR_COUNTING_BLOCK_LENGTH];
+            long charCount = 0L;
+            int readCharCount;
+
+            while ((readCharCount = reader.read(countingBlock, 0, countingBlock.length)) != END_OF_FILE) {
+                charCount += readCharCount;
+
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Char counting interrupted");
+                }
+            }
+
+            return charCount;
+        }
+    }
+
+    /* ***** Реализация Reader. ***** */
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        checkOpen();
+
+        if (offset < 0 || length < 0 || offset + length > chars.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (length == 0) {
+            return 0;
+        }
+
+        return decodingTable != null ? readUsingDecodingTable(chars, offset, length) : readUsingDecoder(chars, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sourceFileChannel != null) {
+            sourceFileChannel.close();
+            sourceFileChannel = null;
+            window = null;
+        }
+    }
+
+    // ****************************** //
+
+    private static final int BYTE_VALUE_COUNT = 256;
+
+    /**
+     * @return таблицу декодирования, если каждый байт в кодировке sourceFileEncoding декодируется ровно в один символ независимо от соседних байт,
+     *         иначе null.
+     */
+    private static char[] makeDecodingTable(Charset sourceFileEncoding) {
+        if (!sourceFileEncoding.canEncode() || sourceFileEncoding.newEncoder().maxBytesPerChar() != 1.0f) {
+            return null;
+        }
+
+        CharsetDecoder decoder = sourceFileEncoding.newDecoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE);
+
+        if (decoder.maxCharsPerByte() != 1.0f) {
+            return null;
+        }
+
+        char[] decodingTable = new char[BYTE_VALUE_COUNT];
+
+        for (int byteValue = 0; byteValue < BYTE_VALUE_COUNT; ++byteValue) {
+            try {
+                CharBuffer decoded = decoder.reset().decode(ByteBuffer.wrap(new byte[] {(byte)byteValue}));
+
+                if (decoded.remaining() != 1) {
+                    return null;
+                }
+
+                decodingTable[byteValue] = decoded.get();
+            }
+            catch (CharacterCodingException exception) {
+                return null;
+            }
+        }
+
+        return decodingTable;
+    }
+
+    /**
+     * @return true, если байт b декодируется в символ (char)(b & 0xFF) (например, в ISO-8859-1).
+     */
+    private static boolean isWideningDecodingTable(char[] decodingTable) {
+        for (int byteValue = 0; byteValue < BYTE_VALUE_COUNT; ++byteValue) {
+            if (decodingTable[byteValue] != byteValue) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int readUsingDecodingTable(char[] chars, int offset, int length) throws IOException {
+        if (!window.hasRemaining() && !mapNextWindow(windowStartPos + window.position())) {
+            return END_OF_FILE;
+        }
+
+        int pos = window.position();
+        int readCharCount = min(length, window.limit() - pos);
+
+        if (wideningDecoding) {
+            for (int i = 0; i < readCharCount; ++i) {
+                chars[offset + i] = (char)(window.get(pos + i) & 0xFF);
+            }
+        }
+        else {
+            for (int i = 0; i < readCharCount; ++i) {
+                chars[offset + i] = decodingTable[window.get(pos + i) & 0xFF];
+            }
+        }
+
+        window.position(pos + readCharCount);
+        return readCharCount;
+    }
+
+    private int readUsingDecoder(char[] chars, int offset, int length) throws IOException {
+        int readCharCount = 0;
+
+        if (pendingChar != NO_PENDING_CHAR) {
+            chars[offset] = (char)pendingChar;
+            pendingChar = NO_PENDING_CHAR;
+
+            if (++readCharCount == length) {
+                return readCharCount;
+            }
+        }
+
+        if (decodingCompleted) {
+            return readCharCount > 0 ? readCharCount : END_OF_FILE;
+        }
+
+        CharBuffer target = wrap(chars, offset + readCharCount, length - readCharCount);
+
+        // Сброшенный декодер не может декодировать: повторяется только сброс, пока он не завершится.
+        while (!flushing && target.position() == offset + readCharCount) {
+            boolean lastWindow = windowStartPos + window.limit() == sourceFileLength;
+            CoderResult result = decoder.decode(window, target, lastWindow);
+
+            if (result.isError()) {
+                result.throwException();
+            }
+
+            if (result.isOverflow()) {
+                if (target.position() == offset + readCharCount) {
+                    // Следующий символ не помещается в оставшуюся часть буфера читающего (суррогатная пара).
+                    return readCharCount + readSplitChar(chars, offset + readCharCount);
+                }
+
+                break;
+            }
+
+            // Недостаточно входных данных.
+            if (lastWindow) {
+                flushing = true;
+                break;
+            }
+
+            mapNextWindow(windowStartPos + window.position());
+        }
+
+        if (flushing) {
+            int flushStartPos = target.position();
+            decodingCompleted = decoder.flush(target).isUnderflow();
+
+            if (!decodingCompleted && target.position() == flushStartPos && flushStartPos == offset + readCharCount) {
+                // Следующий сбрасываемый символ не помещается в оставшуюся часть буфера читающего (суррогатная пара).
+                return readCharCount + readFlushedSplitChar(chars, offset + readCharCount);
+            }
+        }
+
+        readCharCount += target.position() - (offset + readCharCount);
+        return readCharCount > 0 ? readCharCount : END_OF_FILE;
+    }
+
+    private int readFlushedSplitChar(char[] chars, int offset) {
+        CharBuffer splitChar = CharBuffer.allocate(2);
+        decodingCompleted = decoder.flush(splitChar).isUnderflow();
+
+        splitChar.flip();
+        chars[offset] = splitChar.get();
+
+        if (splitChar.hasRemaining()) {
+            pendingChar = splitChar.get();
+        }
+
+        return 1;
+    }
+
+    private int readSplitChar(char[] chars, int offset) throws IOException {
+        CharBuffer splitChar = CharBuffer.allocate(2);
+        CoderResult result = decoder.decode(window, splitChar, windowStartPos + window.limit() == sourceFileLength);
+
+        if (result.isError()) {
+            result.throwException();
+        }
+
+        splitChar.flip();
+        chars[offset] = splitChar.get();
+
+        if (splitChar.hasRemaining()) {
+            pendingChar = splitChar.get();
+        }
+
+        return 1;
+    }
+
+    /**
+     * Буфер-обертка переиспользуется, пока читающий передает один и тот же массив (обычный случай - чтение блоками).
+     */
+    private CharBuffer wrap(char[] chars, int offset, int length) {
+        if (wrappedChars != chars) {
+            wrappedChars = chars;
+            wrapper = CharBuffer.wrap(chars);
+        }
+
+        wrapper.limit(offset + length);
+        wrapper.position(offset);
+        return wrapper;
+    }
+
+    /**
+     * @return false, если достигнут конец исходного файла.
+     */
+    private boolean mapNextWindow(long nextWindowStartPos) throws IOException {
+        if (window != null && nextWindowStartPos >= sourceFileLength) {
+            return false;
+        }
+
+        windowStartPos = nextWindowStartPos;
+        long nextWindowLength = min(mappingWindowLength, sourceFileLength - nextWindowStartPos);
+        window = sourceFileChannel.map(READ_ONLY, nextWindowStartPos, nextWindowLength);
+
+        return nextWindowLength > 0;
+    }
+
+    private void checkOpen() throws IOException {
+        if (sourceFileChannel == null) {
+            throw new IOException("Reader closed");
+        }
+    }
+
+    // ****************************** //
+
+    private static final int END_OF_FILE = -1;
+    private static final int NO_PENDING_CHAR = -1;
+    private static final int CHAR_COUNTING_BLOCK_LENGTH = 1 << 16;
+
+    private final int mappingWindowLength;
+    private final char[] decodingTable;
+    private final boolean wideningDecoding;
+    private final CharsetDecoder decoder;
+
+    private FileChannel sourceFileChannel;
+    private final long sourceFileLength;
+    private long windowStartPos;
+    private MappedByteBuffer window;
+
+    private char[] wrappedChars;
+    private CharBuffer wrapper;
+    private int pendingChar = NO_PENDING_CHAR;
+    private boolean flushing;
+    private boolean decodingCompleted;
+}
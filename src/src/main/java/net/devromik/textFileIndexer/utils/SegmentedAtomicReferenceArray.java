@@ -0,0 +1,135 @@
+package net.devromik.textFileIndexer.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import static java.lang.Math.*;
+import static java.util.Arrays.copyOf;
+
+/**
+ * Массив ссылок с адресацией по long, состоящий из сегментов (AtomicReferenceArray) длины 2^segmentLengthLog.
+ * Элемент с индексом index находится в сегменте index >>> segmentLengthLog.
+ *
+ * Рост добавляет сегменты и никогда не копирует уже записанные элементы:
+ * копируется только каталог сегментов (по одной ссылке на сегмент).
+ *
+ * Рост и усечение (ensureCapacity, trimToCapacity) выполняются одним потоком-писателем.
+ * Чтение и запись элементов безопасны для любых потоков и имеют семантику AtomicReferenceArray.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class SegmentedAtomicReferenceArray<E> {
+
+    public static final int MIN_SEGMENT_LENGTH_LOG = 0;
+    public static final int MAX_SEGMENT_LENGTH_LOG = 30;
+    public static final int DEFAULT_SEGMENT_LENGTH_LOG = 14;
+
+    // ****************************** //
+
+    public SegmentedAtomicReferenceArray() {
+        this(DEFAULT_SEGMENT_LENGTH_LOG);
+    }
+
+    /**
+     * @throws java.lang.IllegalArgumentException если segmentLengthLog < MIN_SEGMENT_LENGTH_LOG || segmentLengthLog > MAX_SEGMENT_LENGTH_LOG.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SegmentedAtomicReferenceArray(int segmentLengthLog) {
+        PreconditionUtils.checkArgument(segmentLengthLog >= MIN_SEGMENT_LENGTH_LOG && segmentLengthLog <= MAX_SEGMENT_LENGTH_LOG);
+
+        this.segmentLengthLog = segmentLengthLog;
+        this.segmentIndexMask = (1 << segmentLengthLog) - 1;
+        this.segments = new AtomicReferenceArray[0];
+    }
+
+    /**
+     * @return количество элементов, которые могут быть записаны без роста.
+     */
+    public long getCapacity() {
+        return (long)segmentCount << segmentLengthLog;
+    }
+
+    /**
+     * Добавляет сегменты так, чтобы getCapacity() >= minCapacity.
+     * Сегменты выделяются по мере необходимости, а каталог сегментов - с запасом (не менее чем в полтора раза),
+     * что делает его копирование пренебрежимо редким.
+     *
+     * @throws java.lang.IllegalArgumentException если minCapacity < 0.
+     */
+    public void ensureCapacity(long minCapacity) {
+        PreconditionUtils.checkArgument(minCapacity >= 0L);
+
+        if (minCapacity <= getCapacity()) {
+            return;
+        }
+
+        long requiredSegmentCount = getRequiredSegmentCount(minCapacity);
+        AtomicReferenceArray<E>[] currentSegments = segments;
+
+        if (requiredSegmentCount > currentSegments.length) {
+            long newSegmentCapacity =
+                max(
+                    requiredSegmentCount,
+                    (long)currentSegments.length + max(currentSegments.length >> 1, MIN_SEGMENT_CAPACITY_INCREASING_WHILE_GROWING));
+
+            // Публикуется после копирования: читатель видит либо старый, либо полностью сформированный каталог.
+            segments = copyOf(currentSegments, (int)min(newSegmentCapacity, ArrayUtils.MAX_ACCEPTABLE_ARRAY_LENGTH));
+        }
+
+        // Новые сегменты записываются в еще не используемые ячейки каталога.
+        AtomicReferenceArray<E>[] grownSegments = segments;
+
+        while (segmentCount < requiredSegmentCount) {
+            grownSegments[segmentCount] = new AtomicReferenceArray<>(1 << segmentLengthLog);
+            ++segmentCount;
+        }
+
+        // Публикация новых сегментов (volatile-запись).
+        segments = grownSegments;
+    }
+
+    /**
+     * Освобождает сегменты и резерв каталога сверх необходимых для хранения элементов [0, minCapacity).
+     * Элементы с индексами, не меньшими getCapacity() после усечения, не должны использоваться.
+     *
+     * @throws java.lang.IllegalArgumentException если minCapacity < 0.
+     */
+    public void trimToCapacity(long minCapacity) {
+        PreconditionUtils.checkArgument(minCapacity >= 0L);
+        int requiredSegmentCount = (int)getRequiredSegmentCount(minCapacity);
+        AtomicReferenceArray<E>[] currentSegments = segments;
+
+        if (requiredSegmentCount < currentSegments.length) {
+            segmentCount = min(segmentCount, requiredSegmentCount);
+
+            // Публикуется после копирования (см. ensureCapacity).
+            segments = copyOf(currentSegments, requiredSegmentCount);
+        }
+    }
+
+    public E get(long index) {
+        return segments[(int)(index >>> segmentLengthLog)].get((int)index & segmentIndexMask);
+    }
+
+    public void set(long index, E element) {
+        segments[(int)(index >>> segmentLengthLog)].set((int)index & segmentIndexMask, element);
+    }
+
+    // ****************************** //
+
+    private long getRequiredSegmentCount(long capacity) {
+        long requiredSegmentCount = capacity > 0L ? ((capacity - 1L) >>> segmentLengthLog) + 1L : 0L;
+        PreconditionUtils.checkArgument(requiredSegmentCount <= ArrayUtils.MAX_ACCEPTABLE_ARRAY_LENGTH);
+
+        return requiredSegmentCount;
+    }
+
+    // ****************************** //
+
+    private static final int MIN_SEGMENT_CAPACITY_INCREASING_WHILE_GROWING = 8;
+
+    private final int segmentLengthLog;
+    private final int segmentIndexMask;
+    private volatile AtomicReferenceArray<E>[] segments;
+
+    // Количество выделенных сегментов (используется только писателем).
+    private int segmentCount;
+}
@@ -0,0 +1,55 @@
+package net.devromik.textFileIndexer.impl;
+
+import java.util.*;
+import org.junit.Test;
+import net.devromik.textFileIndexer.OccurrencePosIterator;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+public class ArrayOccurrencePosIteratorTest {
+
+    @Test
+    public void test_Sorted() throws Exception {
+        Random random = new Random(1L);
+        long[] occurrencePositions = new long[5000];
+
+        for (int i = 0; i < occurrencePositions.length; ++i) {
+            occurrencePositions[i] = random.nextInt(100000);
+        }
+
+        long[] sortedOccurrencePositions = occurrencePositions.clone();
+        Arrays.sort(sortedOccurrencePositions);
+
+        // Хранятся все позиции, часть из них или только offset + limit наименьших (max-куча).
+        long[][] offsetsAndLimits = {
+            {0L, Long.MAX_VALUE}, {Long.MAX_VALUE, Long.MAX_VALUE}, {0L, 1L}, {0L, 10L}, {7L, 3L},
+            {100L, 1000L}, {4990L, 100L}, {5000L, 1L}, {6000L, 10L}, {0L, 5000L}, {1L, 4999L}};
+
+        for (long[] offsetAndLimit : offsetsAndLimits) {
+            long offset = offsetAndLimit[0];
+            long limit = offsetAndLimit[1];
+            OccurrencePosIterator iter =
+                ArrayOccurrencePosIterator.sorted(
+                    new ArrayOccurrencePosIterator(occurrencePositions.clone(), 0, occurrencePositions.length),
+                    offset,
+                    limit);
+
+            int firstPos = (int)Math.min(offset, sortedOccurrencePositions.length);
+            int followingLastPos = (int)Math.min(firstPos + Math.min(limit, sortedOccurrencePositions.length), sortedOccurrencePositions.length);
+
+            for (int pos = firstPos; pos < followingLastPos; ++pos) {
+                assertTrue(iter.hasNext());
+                assertThat(iter.getNext(), is(sortedOccurrencePositions[pos]));
+            }
+
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void test_Sorted_When_LimitIsZero() throws Exception {
+        OccurrencePosIterator iter = new ArrayOccurrencePosIterator(new long[] {3L, 1L, 2L}, 0, 3);
+        assertFalse(ArrayOccurrencePosIterator.sorted(iter, 1L, 0L).hasNext());
+        assertFalse(iter.hasNext());
+    }
+}
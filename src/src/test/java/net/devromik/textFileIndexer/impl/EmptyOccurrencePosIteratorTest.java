@@ -0,0 +1,22 @@
+package net.devromik.textFileIndexer.impl;
+
+import java.nio.LongBuffer;
+import org.junit.Test;
+
+public class EmptyOccurrencePosIteratorTest {
+
+    @Test(expected = IllegalStateException.class)
+    public void test_BulkOccurrenceRetrieval() throws Exception {
+        EmptyOccurrencePosIterator.INSTANCE.getNext(new long[4], 0, 4);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_BufferOccurrenceRetrieval() throws Exception {
+        EmptyOccurrencePosIterator.INSTANCE.getNext(LongBuffer.allocate(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_BulkOccurrenceRetrieval_When_RangeIsOutOfArray() throws Exception {
+        EmptyOccurrencePosIterator.INSTANCE.getNext(new long[4], 2, 3);
+    }
+}
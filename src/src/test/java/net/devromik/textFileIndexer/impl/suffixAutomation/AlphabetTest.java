@@ -0,0 +1,45 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import org.junit.Test;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.Alphabet.NO_SYMBOL;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.DefinitiveSuffixAutomationStorage.HEAP;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+public class AlphabetTest {
+
+    @Test
+    public void test_Compacting() throws Exception {
+        Alphabet alphabet = new Alphabet();
+        alphabet.compact();
+        assertThat(alphabet.getSize(), is(0));
+        assertThat(alphabet.getSymbol('a'), is(NO_SYMBOL));
+
+        alphabet.add('z');
+        alphabet.add('a');
+        alphabet.add('z');
+        alphabet.add(Character.MAX_VALUE);
+        alphabet.add('\0');
+        alphabet.compact();
+
+        assertThat(alphabet.getSize(), is(4));
+        assertThat(alphabet.getSymbol('\0'), is(0));
+        assertThat(alphabet.getSymbol('a'), is(1));
+        assertThat(alphabet.getSymbol('z'), is(2));
+        assertThat(alphabet.getSymbol(Character.MAX_VALUE), is(3));
+        assertThat(alphabet.getSymbol('b'), is(NO_SYMBOL));
+    }
+
+    @Test
+    public void test_SymbolWidth() throws Exception {
+        SegmentedSymbolArray byteSymbols = new SegmentedSymbolArray(2L, SegmentedSymbolArray.MAX_BYTE_SYMBOL_ALPHABET_SIZE, HEAP, null);
+        byteSymbols.set(0L, SegmentedSymbolArray.MAX_BYTE_SYMBOL_ALPHABET_SIZE - 1);
+        assertThat(byteSymbols.get(0L), is(SegmentedSymbolArray.MAX_BYTE_SYMBOL_ALPHABET_SIZE - 1));
+        assertThat(byteSymbols.getMemoryInBytes(), is(2L));
+
+        SegmentedSymbolArray charSymbols = new SegmentedSymbolArray(2L, SegmentedSymbolArray.MAX_BYTE_SYMBOL_ALPHABET_SIZE + 1, HEAP, null);
+        charSymbols.set(1L, SegmentedSymbolArray.MAX_BYTE_SYMBOL_ALPHABET_SIZE);
+        assertThat(charSymbols.get(1L), is(SegmentedSymbolArray.MAX_BYTE_SYMBOL_ALPHABET_SIZE));
+        assertThat(charSymbols.getMemoryInBytes(), is(4L));
+    }
+}
@@ -0,0 +1,46 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import org.junit.Test;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.BuildingTimeStateAttributes.SEGMENT_LENGTH_LOG;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.State.NO_STATE_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BuildingTimeStateAttributesTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_EnsureCapacity_When_MinCapacityIsNegative() throws Exception {
+        new BuildingTimeStateAttributes().ensureCapacity(-1L);
+    }
+
+    @Test
+    public void test_Attributes() throws Exception {
+        BuildingTimeStateAttributes attributes = new BuildingTimeStateAttributes();
+        long STATE_COUNT = (3L << SEGMENT_LENGTH_LOG) + 5L;
+
+        // Рост добавлением сегментов сохраняет записанные атрибуты.
+        for (long stateId = 0L; stateId < STATE_COUNT; ++stateId) {
+            attributes.ensureCapacity(stateId + 1L);
+            attributes.setAttributes(stateId, stateId + 1L, stateId + 2L, stateId % 3L == 0L);
+            assertThat(attributes.getSuffixLink(stateId), is(NO_STATE_ID));
+            attributes.setSuffixLink(stateId, stateId / 2L);
+        }
+
+        for (long stateId = 0L; stateId < STATE_COUNT; ++stateId) {
+            assertThat(attributes.getGreatestSubstringLength(stateId), is(stateId + 1L));
+            assertThat(attributes.getMinSubstringEndPos(stateId), is(stateId + 2L));
+            assertThat(attributes.isClone(stateId), is(stateId % 3L == 0L));
+            assertThat(attributes.getSuffixLink(stateId), is(stateId / 2L));
+        }
+
+        // Усечение сохраняет атрибуты используемых состояний.
+        attributes.ensureCapacity(10L << SEGMENT_LENGTH_LOG);
+        attributes.trimToCapacity(STATE_COUNT);
+        attributes.ensureCapacity(STATE_COUNT + (1L << SEGMENT_LENGTH_LOG));
+
+        for (long stateId = 0L; stateId < STATE_COUNT; ++stateId) {
+            assertThat(attributes.getGreatestSubstringLength(stateId), is(stateId + 1L));
+            assertThat(attributes.isClone(stateId), is(stateId % 3L == 0L));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.util.*;
+import org.junit.Test;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.DefinitiveSuffixAutomationStorage.HEAP;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.State.NO_STATE_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+public class BuildingTimeStateTest {
+
+    @Test
+    public void test_TransitionVersioning() throws Exception {
+        // Читатель, видящий суффиксный автомат по состоянию на первый шаг построения, не позволяет удалить ни одну из версий.
+        ParallelToBuildingReadingInfo parallelToBuildReadInfo = new ParallelToBuildingReadingInfo();
+        parallelToBuildReadInfo.onParallelToBuildingReadingStarted(1);
+        BuildingTimeState state = makeState(parallelToBuildReadInfo);
+
+        state.addTransition('a', 10, 1);
+        parallelToBuildReadInfo.lastPublishedBuildStep = 1;
+        state.redirectTransition('a', 20, 5);
+        parallelToBuildReadInfo.lastPublishedBuildStep = 5;
+        state.redirectTransition('a', 30, 9);
+
+        assertThat(state.getActualTransitionTargetStateId('a', 0), is(NO_STATE_ID));
+        assertThat(state.getActualTransitionTargetStateId('a', 1), is(10L));
+        assertThat(state.getActualTransitionTargetStateId('a', 4), is(10L));
+        assertThat(state.getActualTransitionTargetStateId('a', 5), is(20L));
+        assertThat(state.getActualTransitionTargetStateId('a', 8), is(20L));
+        assertThat(state.getActualTransitionTargetStateId('a', 9), is(30L));
+        assertThat(state.getActualTransitionTargetStateId('b', 9), is(NO_STATE_ID));
+
+        assertThat(state.getActualTransitionCount(4), is(1));
+        assertThat(state.getActualTransitionCount(9), is(1));
+    }
+
+    @Test
+    public void test_UnreadVersionsAreRemoved() throws Exception {
+        ParallelToBuildingReadingInfo parallelToBuildReadInfo = new ParallelToBuildingReadingInfo();
+        BuildingTimeState state = makeState(parallelToBuildReadInfo);
+
+        for (int i = 1; i <= 100; ++i) {
+            state.redirectTransition('a', i, i);
+            parallelToBuildReadInfo.lastPublishedBuildStep = i;
+        }
+
+        for (int i = 101; i <= 200; ++i) {
+            state.redirectTransition('b', i, i);
+            parallelToBuildReadInfo.lastPublishedBuildStep = i;
+        }
+
+        // Читателей нет, а каждый шаг построения опубликован, поэтому замененные версии не накапливаются.
+        assertThat(state.getActualTransitionTargetStateId('a', 200), is(100L));
+        assertThat(state.getActualTransitionTargetStateId('a', 50), is(NO_STATE_ID));
+        assertThat(state.getActualTransitionTargetStateId('b', 200), is(200L));
+        assertThat(state.getActualTransitionCount(200), is(2));
+    }
+
+    @Test
+    public void test_ManyTransitions() throws Exception {
+        BuildingTimeState state = makeState();
+        final int TRANSITION_COUNT = 1000;
+
+        // Символы добавляются в порядке убывания, чтобы проверить упорядоченность результата copyActualTransitionsTo.
+        for (int i = 0; i < TRANSITION_COUNT; ++i) {
+            state.addTransition((char)(TRANSITION_COUNT - i), i, i + 1);
+        }
+
+        for (int i = 0; i < TRANSITION_COUNT; ++i) {
+            assertThat(state.getActualTransitionTargetStateId((char)(TRANSITION_COUNT - i), i), is(NO_STATE_ID));
+            assertThat(state.getActualTransitionTargetStateId((char)(TRANSITION_COUNT - i), i + 1), is((long)i));
+            assertThat(state.getActualTransitionTargetStateId((char)(TRANSITION_COUNT - i), TRANSITION_COUNT), is((long)i));
+        }
+
+        // Символы 1, 2, ..., TRANSITION_COUNT получают номера 0, 1, ..., TRANSITION_COUNT - 1.
+        Alphabet alphabet = new Alphabet();
+
+        for (int i = 1; i <= TRANSITION_COUNT; ++i) {
+            alphabet.add((char)i);
+        }
+
+        alphabet.compact();
+
+        SegmentedSymbolArray transitionSymbols = new SegmentedSymbolArray(TRANSITION_COUNT, alphabet.getSize(), HEAP, null);
+        SegmentedLongArray targetStateIds = new SegmentedLongArray(TRANSITION_COUNT, TRANSITION_COUNT, HEAP, null);
+        assertThat(state.copyActualTransitionsTo(transitionSymbols, targetStateIds, 0L, TRANSITION_COUNT, alphabet), is(TRANSITION_COUNT));
+
+        for (int i = 0; i < TRANSITION_COUNT; ++i) {
+            assertThat(transitionSymbols.get(i), is(i));
+            assertThat(targetStateIds.get(i), is((long)(TRANSITION_COUNT - i - 1)));
+        }
+    }
+
+    @Test
+    public void test_InvertedSuffixLinkVersioning() throws Exception {
+        ParallelToBuildingReadingInfo parallelToBuildReadInfo = new ParallelToBuildingReadingInfo();
+        BuildingTimeState state = makeState(parallelToBuildReadInfo);
+
+        for (int i = 1; i <= 10; ++i) {
+            state.addInvertedSuffixLink(i, i);
+            parallelToBuildReadInfo.lastPublishedBuildStep = i;
+        }
+
+        state.removeInvertedSuffixLink(3, 11);
+
+        assertThat(state.getActualInvertedSuffixLinkCount(10), is(10));
+        assertThat(state.getActualInvertedSuffixLinkCount(11), is(9));
+        assertThat(state.getActualInvertedSuffixLinkCount(5), is(5));
+
+        List<Long> actualInvertedSuffixLinks = new ArrayList<>();
+        StateIdQueue actualInvertedSuffixLinkQueue = StateIdQueue.acquire();
+        state.enqueueActualInvertedSuffixLinksTo(actualInvertedSuffixLinkQueue, 11);
+
+        while (!actualInvertedSuffixLinkQueue.isEmpty()) {
+            actualInvertedSuffixLinks.add(actualInvertedSuffixLinkQueue.dequeue());
+        }
+
+        actualInvertedSuffixLinkQueue.release();
+        assertThat(actualInvertedSuffixLinks, is(Arrays.asList(1L, 2L, 4L, 5L, 6L, 7L, 8L, 9L, 10L)));
+    }
+
+    @Test
+    public void test_VersionsOfUnpublishedVisibilityEpochAreOverwritten() throws Exception {
+        ParallelToBuildingReadingInfo parallelToBuildReadInfo = new ParallelToBuildingReadingInfo();
+        BuildingTimeState state = makeState(parallelToBuildReadInfo);
+
+        state.addTransition('a', 10, 1);
+        state.addInvertedSuffixLink(10, 1);
+        parallelToBuildReadInfo.lastPublishedBuildStep = 1;
+
+        // Эпоха видимости из шагов 2, 3, 4.
+        state.redirectTransition('a', 20, 2);
+        state.redirectTransition('a', 30, 3);
+        state.redirectTransition('a', 40, 4);
+        state.addInvertedSuffixLink(20, 2);
+        state.addInvertedSuffixLink(30, 3);
+        state.removeInvertedSuffixLink(20, 4);
+
+        // Видимые читателям версии первого шага сохранены, версии эпохи перезаписаны (удалены) на месте.
+        assertThat(state.getActualTransitionTargetStateId('a', 1), is(10L));
+        assertThat(state.getActualTransitionTargetStateId('a', 4), is(40L));
+        assertThat(state.getDeadVersionCount(), is(1));
+        assertThat(state.getActualInvertedSuffixLinkCount(1), is(1));
+
+        List<Long> actualInvertedSuffixLinks = new ArrayList<>();
+        StateIdQueue actualInvertedSuffixLinkQueue = StateIdQueue.acquire();
+        state.enqueueActualInvertedSuffixLinksTo(actualInvertedSuffixLinkQueue, 4);
+
+        while (!actualInvertedSuffixLinkQueue.isEmpty()) {
+            actualInvertedSuffixLinks.add(actualInvertedSuffixLinkQueue.dequeue());
+        }
+
+        actualInvertedSuffixLinkQueue.release();
+        assertThat(actualInvertedSuffixLinks, is(Arrays.asList(10L, 30L)));
+    }
+
+    @Test
+    public void test_DeadVersionSweeping() throws Exception {
+        ParallelToBuildingReadingInfo parallelToBuildReadInfo = new ParallelToBuildingReadingInfo();
+        parallelToBuildReadInfo.lastPublishedBuildStep = 1;
+        int readerSlot = parallelToBuildReadInfo.onParallelToBuildingReadingStarted(1);
+        BuildingTimeState state = makeState(parallelToBuildReadInfo);
+
+        state.addTransition('a', 10, 1);
+        state.addInvertedSuffixLink(10, 1);
+        state.redirectTransition('a', 20, 2);
+        state.removeInvertedSuffixLink(10, 2);
+        parallelToBuildReadInfo.lastPublishedBuildStep = 2;
+
+        // Мертвые версии видны читателю, зарегистрированному на первом шаге построения.
+        assertThat(state.getDeadVersionCount(), is(2));
+        assertThat(parallelToBuildReadInfo.retainedDeadVersionCount, is(2L));
+        assertTrue(state.sweepDeadVersions(3));
+        assertThat(state.getActualTransitionTargetStateId('a', 1), is(10L));
+        assertThat(state.getActualInvertedSuffixLinkCount(1), is(1));
+
+        parallelToBuildReadInfo.onParallelToBuildingReadingCompleted(1, readerSlot);
+        assertFalse(state.sweepDeadVersions(4));
+        assertThat(state.getDeadVersionCount(), is(0));
+        assertThat(parallelToBuildReadInfo.retainedDeadVersionCount, is(0L));
+        assertThat(state.getActualTransitionTargetStateId('a', 3), is(20L));
+        assertThat(state.getActualInvertedSuffixLinkCount(3), is(0));
+    }
+
+    // ****************************** //
+
+    private BuildingTimeState makeState() {
+        return makeState(new ParallelToBuildingReadingInfo());
+    }
+
+    private BuildingTimeState makeState(ParallelToBuildingReadingInfo parallelToBuildReadInfo) {
+        return new BuildingTimeState(parallelToBuildReadInfo);
+    }
+}
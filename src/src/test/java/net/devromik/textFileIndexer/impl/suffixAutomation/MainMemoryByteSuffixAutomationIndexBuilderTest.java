@@ -0,0 +1,117 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import net.devromik.textFileIndexer.OccurrencePosIterator;
+import static java.lang.Thread.sleep;
+import static net.devromik.textFileIndexer.Index.NO_OCCURRENCE_POS;
+import static net.devromik.textFileIndexer.IndexingStatus.INDEXING_SUCCESSFULLY_COMPLETED;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+public class MainMemoryByteSuffixAutomationIndexBuilderTest {
+
+    @Test
+    public void test_OccurrenceSearching_When_SourceFileIsMultiByteEncoded() throws Exception {
+        final Charset UTF_8 = Charset.forName("UTF-8");
+
+        // Подготавливаем исходный файл: каждый символ "ж" занимает 2 байта.
+        File sourceFile = workDirectoryManager.newFile();
+        Files.write(sourceFile.toPath(), "жabcжжabc".getBytes(UTF_8));
+
+        for (boolean sourceFileMapping : new boolean[] {false, true}) {
+            MainMemoryByteSuffixAutomationIndex index = buildIndex(sourceFile, UTF_8, sourceFileMapping);
+
+            // Позиции вхождений являются смещениями в байтах.
+            assertThat(readAll(index.getOccurrencePosIterator("abc")), is(Arrays.asList(2L, 9L)));
+            assertThat(readAll(index.getOccurrencePosIterator("жж")), is(Arrays.asList(5L)));
+            assertThat(readAll(index.getOccurrencePosIterator("ж".getBytes(UTF_8))), is(Arrays.asList(0L, 5L, 7L)));
+
+            // Второй байт символа "ж".
+            assertThat(readAll(index.getOccurrencePosIterator(new byte[] {"ж".getBytes(UTF_8)[1]})), is(Arrays.asList(1L, 6L, 8L)));
+
+            assertFalse(index.getOccurrencePosIterator("abd").hasNext());
+            assertFalse(index.getOccurrencePosIterator(new byte[0]).hasNext());
+            assertFalse(index.getOccurrencePosIterator((byte[])null).hasNext());
+
+            assertThat(index.getOccurrenceCount("abc"), is(2L));
+            assertThat(index.getOccurrenceCount("ж".getBytes(UTF_8)), is(3L));
+            assertThat(index.getOccurrenceCount("abd"), is(0L));
+            assertThat(index.getOccurrenceCount((byte[])null), is(0L));
+
+            assertThat(index.getFirstOccurrencePos("ж".getBytes(UTF_8)), is(0L));
+            assertThat(index.getLastOccurrencePos("ж".getBytes(UTF_8)), is(7L));
+            assertThat(index.getLastOccurrencePos("abc"), is(9L));
+            assertThat(index.getFirstOccurrencePos("abd"), is(NO_OCCURRENCE_POS));
+        }
+    }
+
+    @Test
+    public void test_OccurrenceSearching_When_SourceFileIsBinary() throws Exception {
+        byte[] sourceFileContent = new byte[3000];
+        new Random(1L).nextBytes(sourceFileContent);
+
+        File sourceFile = workDirectoryManager.newFile();
+        Files.write(sourceFile.toPath(), sourceFileContent);
+
+        for (boolean sourceFileMapping : new boolean[] {false, true}) {
+            MainMemoryByteSuffixAutomationIndex index = buildIndex(sourceFile, null, sourceFileMapping);
+
+            for (int soughtForByteSeqPos = 0; soughtForByteSeqPos < sourceFileContent.length; soughtForByteSeqPos += 97) {
+                byte[] soughtForByteSeq = Arrays.copyOfRange(sourceFileContent, soughtForByteSeqPos, soughtForByteSeqPos + 2);
+                List<Long> expected = new ArrayList<>();
+
+                for (int pos = 0; pos + 1 < sourceFileContent.length; ++pos) {
+                    if (sourceFileContent[pos] == soughtForByteSeq[0] && sourceFileContent[pos + 1] == soughtForByteSeq[1]) {
+                        expected.add((long)pos);
+                    }
+                }
+
+                List<Long> actual = readAll(index.getOccurrencePosIterator(soughtForByteSeq));
+                Collections.sort(actual);
+                assertThat(actual, is(expected));
+            }
+        }
+    }
+
+    // ****************************** //
+
+    private MainMemoryByteSuffixAutomationIndex buildIndex(File sourceFile, Charset sourceFileEncoding, boolean sourceFileMapping) throws Exception {
+        MainMemoryByteSuffixAutomationIndexBuilder indexBuilder =
+            new MainMemoryByteSuffixAutomationIndexBuilder(
+                sourceFile,
+                sourceFileEncoding,
+                null,
+                null,
+                new MainMemorySuffixAutomationIndexBuilderSettings()
+                    .usingSourceFileMapping(sourceFileMapping)
+                    .usingStoragePresizing(sourceFileMapping));
+        indexBuilder.build();
+
+        // Ожидаем, пока индекс не будет полностью построен.
+        while (indexBuilder.getBuildingStatus() != INDEXING_SUCCESSFULLY_COMPLETED) {
+            sleep(10L);
+        }
+
+        return indexBuilder.getIndex();
+    }
+
+    private List<Long> readAll(OccurrencePosIterator occurrencePosIterator) {
+        List<Long> occurrencePositions = new ArrayList<>();
+
+        while (occurrencePosIterator.hasNext()) {
+            occurrencePositions.add(occurrencePosIterator.getNext());
+        }
+
+        return occurrencePositions;
+    }
+
+    // ****************************** //
+
+    @Rule
+    public TemporaryFolder workDirectoryManager = new TemporaryFolder();
+}
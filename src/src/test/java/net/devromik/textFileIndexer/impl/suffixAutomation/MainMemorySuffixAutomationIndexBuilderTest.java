@@ -1,6 +1,11 @@
 package net.devromik.textFileIndexer.impl.suffixAutomation;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
@@ -10,6 +15,7 @@ import static java.lang.Thread.sleep;
 import net.devromik.textFileIndexer.*;
 import static net.devromik.textFileIndexer.IndexingStatus.*;
 import net.devromik.textFileIndexer.impl.EmptyOccurrencePosIterator;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.MainMemorySuffixAutomationIndexBuilderSettings.NO_VISIBILITY_EPOCH_TIMEOUT;
 import static net.devromik.textFileIndexer.utils.PreconditionUtilsTest.makeFileMock;
 import static org.apache.commons.lang3.StringUtils.repeat;
 import static org.hamcrest.CoreMatchers.*;
@@ -79,7 +85,7 @@ public class MainMemorySuffixAutomationIndexBuilderTest {
                 public void run() {
                     while (indexBuilder.getBuildingStatus() != INDEXING_SUCCESSFULLY_COMPLETED) {
                         try {
-                            int handledCharCountBeforeReading = indexBuilder.getHandledSourceFileCharCount();
+                            long handledCharCountBeforeReading = indexBuilder.getHandledSourceFileCharCount();
                             OccurrencePosIterator occurrencePosIter = index.getOccurrencePosIterator(SOUGHT_FOR_CHAR_SEQUENCE);
                             int occurrenceCount = 0;
 
@@ -89,7 +95,7 @@ public class MainMemorySuffixAutomationIndexBuilderTest {
 
                                 // Потоки-читатели с четными индексами проверяют, что чтение не блокирует построение.
                                 if (indexReadingThreadIndex % 2 == 0) {
-                                    int currentHandledCharCount = indexBuilder.getHandledSourceFileCharCount();
+                                    long currentHandledCharCount = indexBuilder.getHandledSourceFileCharCount();
 
                                     // Если после получения очередного вхождения прогресс в построении индекса не достигнут,
                                     // то либо это произошло в результате неудачного тайминга (все хорошо), либо чтение заблокировало построение (тест провален).
@@ -124,7 +130,7 @@ public class MainMemorySuffixAutomationIndexBuilderTest {
 
                             // Потоки-читатели с нечетными индексами проверяют, что построение не блокирует чтение.
                             if (indexReadingThreadIndex % 2 == 1) {
-                                int handledCharCountAfterReading = indexBuilder.getHandledSourceFileCharCount();
+                                long handledCharCountAfterReading = indexBuilder.getHandledSourceFileCharCount();
 
                                 // Проверяем, что за одну операцию чтения обработано не более 10% символов исходного файла (построение не блокирует чтение).
                                 if (handledCharCountAfterReading - handledCharCountBeforeReading >
@@ -177,7 +183,7 @@ public class MainMemorySuffixAutomationIndexBuilderTest {
         // Запускаем процесс построения индекса.
         MainMemorySuffixAutomationIndexBuilder indexBuilder = makeIndexBuilder(sourceFile);
         indexBuilder.build();
-        int handledCharCountAfterIndexBuildingCancelled = -1;
+        long handledCharCountAfterIndexBuildingCancelled = -1L;
 
         // Предпринимаем попытки остановить процесс построения индекса на полпути до тех пор, пока нам не удастся это сделать.
         while (indexBuilder.getBuildingStatus() != INDEXING_SUCCESSFULLY_COMPLETED) {
@@ -207,6 +213,39 @@ public class MainMemorySuffixAutomationIndexBuilderTest {
         assertThat(indexBuilder.getBuildingStatus(), is(INDEXING_NOT_STARTED));
     }
 
+    // Если build() ожидает предварительного прохода, тест не завершается сам.
+    @Test(timeout = 60000L)
+    public void test_Building_When_StorageIsPresized() throws Exception {
+        // Подготавливаем большой исходный файл в многобайтовой кодировке.
+        File sourceFile = workDirectoryManager.newFile();
+        String sourceFileContent = repeat("жabc€", 100000) + "xyz";
+        Files.write(sourceFile.toPath(), sourceFileContent.getBytes(StandardCharsets.UTF_8));
+
+        // Декодирование (в том числе при предварительном проходе) ожидает разрешения.
+        CountDownLatch decodingAllowed = new CountDownLatch(1);
+
+        MainMemorySuffixAutomationIndexBuilder indexBuilder =
+            new MainMemorySuffixAutomationIndexBuilder(
+                sourceFile,
+                new DecodingAwaitingUtf8Charset(decodingAllowed),
+                null,
+                null,
+                new MainMemorySuffixAutomationIndexBuilderSettings().usingStoragePresizing(true));
+        indexBuilder.build();
+
+        // build() завершается, не ожидая окончания предварительного прохода.
+        assertThat(indexBuilder.getBuildingStatus(), is(INDEXING_IN_PROGRESS));
+        assertThat(indexBuilder.getHandledSourceFileCharCount(), is(0L));
+
+        decodingAllowed.countDown();
+        waitForIndexBuildingCompleted(indexBuilder);
+        assertThat(indexBuilder.getHandledSourceFileCharCount(), is((long)sourceFileContent.length()));
+
+        OccurrencePosIterator occurrencePosIterator = indexBuilder.getIndex().getOccurrencePosIterator("xyz");
+        assertThat(occurrencePosIterator.getNext(), is((long)sourceFileContent.length() - 3L));
+        assertFalse(occurrencePosIterator.hasNext());
+    }
+
     /* ***** Предусловия. ***** */
 
     @Test(expected = IllegalStateException.class)
@@ -496,12 +535,247 @@ public class MainMemorySuffixAutomationIndexBuilderTest {
         assertFalse(occurrencePosIterator.hasNext());
     }
 
+    @Test
+    public void test_OccurrenceSearching_When_SettingsAreNotDefault() throws Exception {
+        final String SOUGHT_FOR_CHAR_SEQUENCE = "abc";
+
+        // Подготавливаем исходный файл.
+        File sourceFile = workDirectoryManager.newFile();
+        Writer sourceFileWriter = new BufferedWriter(new FileWriter(sourceFile));
+
+        for (int i = 0; i < 1000; ++i) {
+            if (i == 0 || i == 500 || i == 999) {
+                sourceFileWriter.write(SOUGHT_FOR_CHAR_SEQUENCE);
+            }
+            else {
+                sourceFileWriter.write("z");
+            }
+        }
+
+        sourceFileWriter.close();
+
+        // Вхождения пересекают границы блоков и эпох видимости.
+        for (int i = 0; i < 10; ++i) {
+            int readingBlockLength = new int[] {1, 2, 7, 1000, 4096}[i % 5];
+            boolean sourceFileMapping = i >= 5;
+            long visibilityEpochCharCount = new long[] {1L, 3L, 500L, 2000L}[i % 4];
+
+            // Запускаем процесс построения индекса.
+            MainMemorySuffixAutomationIndexBuilder indexBuilder =
+                new MainMemorySuffixAutomationIndexBuilder(
+                    sourceFile,
+                    null,
+                    null,
+                    null,
+                    new MainMemorySuffixAutomationIndexBuilderSettings()
+                        .usingReadingBlockLength(readingBlockLength)
+                        .usingSourceFileMapping(sourceFileMapping)
+                        .usingVisibilityEpochCharCount(visibilityEpochCharCount)
+                        .usingVisibilityEpochMillis(i % 3 == 0 ? 1L : NO_VISIBILITY_EPOCH_TIMEOUT)
+                        .usingStoragePresizing(i % 2 == 1));
+            indexBuilder.build();
+
+            // Ожидаем, пока индекс не будет полностью построен.
+            waitForIndexBuildingCompleted(indexBuilder);
+            assertThat(indexBuilder.getHandledSourceFileCharCount(), is(1006L));
+
+            // Проверяем вхождения.
+            OccurrencePosIterator occurrencePosIterator = indexBuilder.getIndex().getOccurrencePosIterator(SOUGHT_FOR_CHAR_SEQUENCE);
+            assertThat(occurrencePosIterator.getNext(), is(0L));
+            assertThat(occurrencePosIterator.getNext(), is(502L));
+            assertThat(occurrencePosIterator.getNext(), is(1003L));
+            assertFalse(occurrencePosIterator.hasNext());
+        }
+    }
+
+    @Test
+    public void test_OccurrenceSearching_When_PostbuildOptimizingIsParallel() throws Exception {
+        final String SOUGHT_FOR_CHAR_SEQUENCE = "abc";
+        final int SOURCE_FILE_LENGTH = 50000;
+
+        // Подготавливаем исходный файл: состояний достаточно много, чтобы оптимизация после построения разбивалась на несколько задач.
+        File sourceFile = workDirectoryManager.newFile();
+        Writer sourceFileWriter = new BufferedWriter(new FileWriter(sourceFile));
+        Random random = new Random(1L);
+        StringBuilder sourceFileContent = new StringBuilder();
+
+        for (int i = 0; i < SOURCE_FILE_LENGTH; ++i) {
+            sourceFileContent.append((char)('a' + random.nextInt(3)));
+        }
+
+        sourceFileWriter.write(sourceFileContent.toString());
+        sourceFileWriter.close();
+
+        // Запускаем процесс построения индекса.
+        ForkJoinPool postbuildOptimizingPool = new ForkJoinPool(4);
+        MainMemorySuffixAutomationIndexBuilder indexBuilder =
+            new MainMemorySuffixAutomationIndexBuilder(
+                sourceFile,
+                null,
+                null,
+                null,
+                new MainMemorySuffixAutomationIndexBuilderSettings().usingPostbuildOptimizingPool(postbuildOptimizingPool));
+        indexBuilder.build();
+
+        // Ожидаем, пока индекс не будет полностью построен и оптимизирован.
+        waitForIndexBuildingCompleted(indexBuilder);
+
+        while (!indexBuilder.isPostbuildOptimizingCompleted()) {
+            sleep(10L);
+        }
+
+        // Проверяем вхождения.
+        Set<Long> expectedOccurrencePositions = new HashSet<>();
+
+        for (int pos = sourceFileContent.indexOf(SOUGHT_FOR_CHAR_SEQUENCE); pos != -1; pos = sourceFileContent.indexOf(SOUGHT_FOR_CHAR_SEQUENCE, pos + 1)) {
+            expectedOccurrencePositions.add((long)pos);
+        }
+
+        Set<Long> occurrencePositions = new HashSet<>();
+        OccurrencePosIterator occurrencePosIterator = indexBuilder.getIndex().getOccurrencePosIterator(SOUGHT_FOR_CHAR_SEQUENCE);
+
+        while (occurrencePosIterator.hasNext()) {
+            assertTrue(occurrencePositions.add(occurrencePosIterator.getNext()));
+        }
+
+        assertThat(occurrencePositions, is(expectedOccurrencePositions));
+        assertThat(indexBuilder.getIndex().getOccurrenceCount(SOUGHT_FOR_CHAR_SEQUENCE), is((long)expectedOccurrencePositions.size()));
+        assertThat(indexBuilder.getIndex().getOccurrenceCount(""), is(0L));
+        postbuildOptimizingPool.shutdown();
+    }
+
+    @Test
+    public void test_OccurrenceSearching_When_DefinitiveAutomationIsOffHeap() throws Exception {
+        // Подготавливаем исходный файл.
+        File sourceFile = workDirectoryManager.newFile();
+        Writer sourceFileWriter = new BufferedWriter(new FileWriter(sourceFile));
+        sourceFileWriter.write("abcabxabcd");
+        sourceFileWriter.close();
+
+        File targetDirectory = workDirectoryManager.newFolder();
+
+        for (DefinitiveSuffixAutomationStorage storage : DefinitiveSuffixAutomationStorage.values()) {
+            MainMemorySuffixAutomationIndexBuilder indexBuilder =
+                new MainMemorySuffixAutomationIndexBuilder(
+                    sourceFile,
+                    null,
+                    targetDirectory,
+                    null,
+                    new MainMemorySuffixAutomationIndexBuilderSettings().usingDefinitiveAutomationStorage(storage));
+            indexBuilder.build();
+
+            // Ожидаем, пока индекс не будет полностью построен и оптимизирован.
+            waitForIndexBuildingCompleted(indexBuilder);
+
+            while (!indexBuilder.isPostbuildOptimizingCompleted()) {
+                sleep(10L);
+            }
+
+            Set<Long> occurrencePositions = new HashSet<>();
+            OccurrencePosIterator occurrencePosIterator = indexBuilder.getIndex().getOccurrencePosIterator("ab");
+
+            while (occurrencePosIterator.hasNext()) {
+                assertTrue(occurrencePositions.add(occurrencePosIterator.getNext()));
+            }
+
+            assertThat(occurrencePositions, is((Set<Long>)new HashSet<>(Arrays.asList(0L, 3L, 6L))));
+            assertFalse(indexBuilder.getIndex().getOccurrencePosIterator("abd").hasNext());
+            assertThat(indexBuilder.getIndex().getOccurrencePosIterator("abcd").getNext(), is(6L));
+
+            // Временные файлы удаляются сразу после отображения.
+            if (storage == DefinitiveSuffixAutomationStorage.MAPPED && !System.getProperty("os.name").startsWith("Windows")) {
+                assertThat(targetDirectory.list().length, is(0));
+            }
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void test_DefinitiveAutomationStorage_Precondition() throws Exception {
+        new MainMemorySuffixAutomationIndexBuilderSettings().usingDefinitiveAutomationStorage(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_ReadingBlockLength_Precondition() throws Exception {
+        new MainMemorySuffixAutomationIndexBuilderSettings().usingReadingBlockLength(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_VisibilityEpochCharCount_Precondition() throws Exception {
+        new MainMemorySuffixAutomationIndexBuilderSettings().usingVisibilityEpochCharCount(0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_VisibilityEpochMillis_Precondition() throws Exception {
+        new MainMemorySuffixAutomationIndexBuilderSettings().usingVisibilityEpochMillis(-1L);
+    }
+
     // ****************************** //
 
     private MainMemorySuffixAutomationIndexBuilder makeIndexBuilder(File sourceFile) {
         return new MainMemorySuffixAutomationIndexBuilder(sourceFile, null, null, null);
     }
 
+    /**
+     * UTF-8, декодирование в которой начинается только после decodingAllowed.countDown().
+     */
+    private static class DecodingAwaitingUtf8Charset extends Charset {
+
+        DecodingAwaitingUtf8Charset(CountDownLatch decodingAllowed) {
+            super("x-decoding-awaiting-utf-8", null);
+            this.decodingAllowed = decodingAllowed;
+        }
+
+        @Override
+        public boolean contains(Charset charset) {
+            return StandardCharsets.UTF_8.contains(charset);
+        }
+
+        @Override
+        public boolean canEncode() {
+            return false;
+        }
+
+        @Override
+        public CharsetDecoder newDecoder() {
+            final CharsetDecoder utf8Decoder = StandardCharsets.UTF_8.newDecoder();
+
+            return new CharsetDecoder(this, utf8Decoder.averageCharsPerByte(), utf8Decoder.maxCharsPerByte()) {
+
+                @Override
+                protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+                    try {
+                        decodingAllowed.await();
+                    }
+                    catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    return utf8Decoder.decode(in, out, false);
+                }
+
+                @Override
+                protected CoderResult implFlush(CharBuffer out) {
+                    CoderResult result = utf8Decoder.decode(ByteBuffer.allocate(0), out, true);
+                    return result.isUnderflow() ? utf8Decoder.flush(out) : result;
+                }
+
+                @Override
+                protected void implReset() {
+                    utf8Decoder.reset();
+                }
+            };
+        }
+
+        @Override
+        public CharsetEncoder newEncoder() {
+            throw new UnsupportedOperationException();
+        }
+
+        // ****************************** //
+
+        private final CountDownLatch decodingAllowed;
+    }
+
     private void waitForIndexBuildingCompleted(MainMemorySuffixAutomationIndexBuilder indexBuilder) throws InterruptedException {
         while (indexBuilder.getBuildingStatus() != INDEXING_SUCCESSFULLY_COMPLETED) {
             sleep(10L);
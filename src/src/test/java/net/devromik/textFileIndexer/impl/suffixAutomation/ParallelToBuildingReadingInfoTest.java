@@ -0,0 +1,65 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import org.junit.Test;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.ParallelToBuildingReadingInfo.OVERFLOW_READER_SLOT;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class ParallelToBuildingReadingInfoTest {
+
+    @Test
+    public void test_FirstIrrelevantForAllReadersBuildStep() throws Exception {
+        ParallelToBuildingReadingInfo info = new ParallelToBuildingReadingInfo();
+        info.lastPublishedBuildStep = 10L;
+
+        // Читателей нет: новый читатель увидит последний опубликованный шаг построения.
+        assertThat(info.getFirstIrrelevantForAllReadersBuildStep(11L), is(10L));
+
+        int firstReaderSlot = info.onParallelToBuildingReadingStarted(7L);
+        int secondReaderSlot = info.onParallelToBuildingReadingStarted(7L);
+        int thirdReaderSlot = info.onParallelToBuildingReadingStarted(9L);
+
+        // Читатели одного шага построения одного потока регистрируются в одном слоте.
+        assertThat(secondReaderSlot, is(firstReaderSlot));
+        assertThat(thirdReaderSlot, is(not(firstReaderSlot)));
+
+        // В пределах шага построения значение не пересчитывается.
+        assertThat(info.getFirstIrrelevantForAllReadersBuildStep(11L), is(10L));
+        assertThat(info.getFirstIrrelevantForAllReadersBuildStep(12L), is(7L));
+
+        info.onParallelToBuildingReadingCompleted(7L, firstReaderSlot);
+        assertThat(info.getFirstIrrelevantForAllReadersBuildStep(13L), is(7L));
+
+        info.onParallelToBuildingReadingCompleted(7L, secondReaderSlot);
+        assertThat(info.getFirstIrrelevantForAllReadersBuildStep(14L), is(9L));
+
+        info.onParallelToBuildingReadingCompleted(9L, thirdReaderSlot);
+        assertThat(info.getFirstIrrelevantForAllReadersBuildStep(15L), is(10L));
+    }
+
+    @Test
+    public void test_OverflowRegistration() throws Exception {
+        ParallelToBuildingReadingInfo info = new ParallelToBuildingReadingInfo(2);
+        info.lastPublishedBuildStep = 10L;
+
+        int firstReaderSlot = info.onParallelToBuildingReadingStarted(5L);
+        int secondReaderSlot = info.onParallelToBuildingReadingStarted(6L);
+        assertThat(firstReaderSlot, is(not(OVERFLOW_READER_SLOT)));
+        assertThat(secondReaderSlot, is(not(OVERFLOW_READER_SLOT)));
+
+        // Все слоты заняты читателями других шагов построения.
+        assertThat(info.onParallelToBuildingReadingStarted(3L), is(OVERFLOW_READER_SLOT));
+        assertThat(info.onParallelToBuildingReadingStarted(3L), is(OVERFLOW_READER_SLOT));
+        assertThat(info.getFirstIrrelevantForAllReadersBuildStep(11L), is(3L));
+
+        info.onParallelToBuildingReadingCompleted(3L, OVERFLOW_READER_SLOT);
+        assertThat(info.getFirstIrrelevantForAllReadersBuildStep(12L), is(3L));
+
+        info.onParallelToBuildingReadingCompleted(3L, OVERFLOW_READER_SLOT);
+        assertThat(info.getFirstIrrelevantForAllReadersBuildStep(13L), is(5L));
+
+        info.onParallelToBuildingReadingCompleted(5L, firstReaderSlot);
+        info.onParallelToBuildingReadingCompleted(6L, secondReaderSlot);
+        assertThat(info.getFirstIrrelevantForAllReadersBuildStep(14L), is(10L));
+    }
+}
@@ -0,0 +1,64 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class StateIdQueueTest {
+
+    @Test
+    public void test_EnqueueAndDequeue() throws Exception {
+        StateIdQueue queue = StateIdQueue.acquire();
+        assertTrue(queue.isEmpty());
+
+        // Чередование добавления и извлечения сдвигает начало кольцевого буфера перед ростом.
+        long nextDequeuedStateId = 0L;
+
+        for (long stateId = 0L; stateId < 1000L; ++stateId) {
+            queue.enqueue(stateId);
+
+            if (stateId % 3L == 0L) {
+                assertThat(queue.dequeue(), is(nextDequeuedStateId++));
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            assertThat(queue.dequeue(), is(nextDequeuedStateId++));
+        }
+
+        assertThat(nextDequeuedStateId, is(1000L));
+        queue.release();
+    }
+
+    @Test
+    public void test_Pooling() throws Exception {
+        StateIdQueue queue = StateIdQueue.acquire();
+        queue.enqueue(1L);
+        queue.release();
+
+        // Освобожденная очередь переиспользуется текущим потоком пустой.
+        StateIdQueue reusedQueue = StateIdQueue.acquire();
+        assertThat(reusedQueue, is(sameInstance(queue)));
+        assertTrue(reusedQueue.isEmpty());
+
+        // Пока очередь занята, создается новая.
+        StateIdQueue anotherQueue = StateIdQueue.acquire();
+        assertThat(anotherQueue, is(not(sameInstance(reusedQueue))));
+
+        anotherQueue.release();
+        reusedQueue.release();
+        assertThat(StateIdQueue.acquire(), is(sameInstance(anotherQueue)));
+    }
+
+    @Test
+    public void test_Pooling_When_QueueHasGrownTooLarge() throws Exception {
+        StateIdQueue queue = StateIdQueue.acquire();
+
+        for (int i = 0; i <= StateIdQueue.MAX_POOLED_CAPACITY; ++i) {
+            queue.enqueue(i);
+        }
+
+        queue.release();
+        assertThat(StateIdQueue.acquire(), is(not(sameInstance(queue))));
+    }
+}
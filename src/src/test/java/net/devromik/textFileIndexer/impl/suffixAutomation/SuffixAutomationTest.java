@@ -0,0 +1,316 @@
+package net.devromik.textFileIndexer.impl.suffixAutomation;
+
+import java.nio.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.Test;
+import net.devromik.textFileIndexer.OccurrencePosIterator;
+import static java.lang.Thread.sleep;
+import static net.devromik.textFileIndexer.Index.NO_OCCURRENCE_POS;
+import static net.devromik.textFileIndexer.impl.suffixAutomation.MainMemorySuffixAutomationIndexBuilderSettings.DEFAULT_POSTBUILD_OPTIMIZING_POOL;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+public class SuffixAutomationTest {
+
+    /**
+     * Незакрытый итератор, полученный в ходе построения, не препятствует оптимизации после построения
+     * и продолжает видеть суффиксный автомат по состоянию на момент своего создания.
+     */
+    @Test
+    public void test_PostbuildOptimizing_When_ParallelToBuildingReadingIsNotCompleted() throws Exception {
+        SuffixAutomation automation = new SuffixAutomation(Paths.get("source"), DEFAULT_POSTBUILD_OPTIMIZING_POOL, DefinitiveSuffixAutomationStorage.HEAP, null);
+        extend(automation, "abcab");
+
+        OccurrencePosIterator parallelToBuildingIter = automation.getOccurrencePosIterator("ab");
+        assertTrue(parallelToBuildingIter.hasNext());
+        assertThat(automation.getOccurrenceCount("ab"), is(2L));
+        assertThat(automation.getFirstOccurrencePos("ab"), is(0L));
+        assertThat(automation.getLastOccurrencePos("ab"), is(3L));
+
+        extend(automation, "cab");
+        automation.onBuildCompleted();
+
+        while (!automation.isPostbuildOptimizingCompleted()) {
+            sleep(10L);
+        }
+
+        assertThat(readAll(parallelToBuildingIter), is(Arrays.asList(0L, 3L)));
+        assertThat(readAll(automation.getOccurrencePosIterator("ab")), is(Arrays.asList(0L, 3L, 6L)));
+        assertThat(automation.getOccurrenceCount("ab"), is(3L));
+        assertThat(automation.getOccurrenceCount("b"), is(3L));
+        assertThat(automation.getOccurrenceCount("abcabcab"), is(1L));
+
+        // Закрытый до исчерпания итератор не возвращает оставшиеся вхождения.
+        OccurrencePosIterator definitiveIter = automation.getOccurrencePosIterator("b");
+        definitiveIter.getNext();
+        definitiveIter.close();
+        assertFalse(definitiveIter.hasNext());
+        assertThat(automation.getOccurrenceCount("ac"), is(0L));
+        assertThat(automation.getFirstOccurrencePos("cab"), is(2L));
+        assertThat(automation.getLastOccurrencePos("cab"), is(5L));
+        assertThat(automation.getFirstOccurrencePos("ac"), is(NO_OCCURRENCE_POS));
+        assertThat(automation.getLastOccurrencePos("ac"), is(NO_OCCURRENCE_POS));
+    }
+
+    /**
+     * Начальное состояние и близкие к нему состояния над широким алфавитом получают плотные таблицы переходов.
+     */
+    @Test
+    public void test_OccurrenceSearching_When_StatesHaveDenseTransitionTables() throws Exception {
+        final int ALPHABET_SIZE = 100;
+        final int SOURCE_LENGTH = 20000;
+
+        SuffixAutomation automation = new SuffixAutomation(Paths.get("source"), DEFAULT_POSTBUILD_OPTIMIZING_POOL, DefinitiveSuffixAutomationStorage.HEAP, null);
+        Random random = new Random(1L);
+        StringBuilder source = new StringBuilder();
+
+        for (int i = 0; i < SOURCE_LENGTH; ++i) {
+            source.append((char)('!' + random.nextInt(ALPHABET_SIZE)));
+        }
+
+        extend(automation, source.toString());
+        automation.onBuildCompleted();
+
+        while (!automation.isPostbuildOptimizingCompleted()) {
+            sleep(10L);
+        }
+
+        for (int i = 0; i < 1000; ++i) {
+            int soughtForPos = random.nextInt(SOURCE_LENGTH - 3);
+            String soughtFor = source.substring(soughtForPos, soughtForPos + 1 + random.nextInt(3));
+            List<Long> expectedOccurrencePositions = findAll(source.toString(), soughtFor);
+            assertThat(readAll(automation.getOccurrencePosIterator(soughtFor)), is(expectedOccurrencePositions));
+            assertThat(automation.getOccurrenceCount(soughtFor), is((long)expectedOccurrencePositions.size()));
+            assertThat(automation.getFirstOccurrencePos(soughtFor), is(expectedOccurrencePositions.get(0)));
+            assertThat(automation.getLastOccurrencePos(soughtFor), is(expectedOccurrencePositions.get(expectedOccurrencePositions.size() - 1)));
+        }
+
+        // Символы вне алфавита исходной строки.
+        assertFalse(automation.getOccurrencePosIterator(" ").hasNext());
+        assertFalse(automation.getOccurrencePosIterator("!\uFFFF").hasNext());
+        assertThat(automation.getOccurrenceCount(" "), is(0L));
+    }
+
+    @Test
+    public void test_BulkOccurrenceRetrieval() throws Exception {
+        SuffixAutomation automation = new SuffixAutomation(Paths.get("source"), DEFAULT_POSTBUILD_OPTIMIZING_POOL, DefinitiveSuffixAutomationStorage.HEAP, null);
+        StringBuilder source = new StringBuilder();
+
+        for (int i = 0; i < 1000; ++i) {
+            source.append("abc");
+        }
+
+        extend(automation, source.toString());
+        List<Long> expectedOccurrencePositions = findAll(source.toString(), "bc");
+
+        // До и после оптимизации.
+        for (int round = 0; round < 2; ++round) {
+            List<Long> occurrencePositions = new ArrayList<>();
+            OccurrencePosIterator iter = automation.getOccurrencePosIterator("bc");
+            long[] chunk = new long[300];
+
+            while (iter.hasNext()) {
+                int count = iter.getNext(chunk, 1, chunk.length - 1);
+                assertTrue(count > 0 && count <= chunk.length - 1);
+
+                for (int i = 1; i <= count; ++i) {
+                    occurrencePositions.add(chunk[i]);
+                }
+            }
+
+            Collections.sort(occurrencePositions);
+            assertThat(occurrencePositions, is(expectedOccurrencePositions));
+
+            for (LongBuffer buffer : new LongBuffer[] {LongBuffer.allocate(1000), ByteBuffer.allocateDirect(1000 * 8).asLongBuffer()}) {
+                iter = automation.getOccurrencePosIterator("bc");
+
+                while (iter.hasNext()) {
+                    iter.getNext(buffer);
+                }
+
+                assertThat(buffer.position(), is(buffer.capacity()));
+                buffer.flip();
+                occurrencePositions.clear();
+
+                while (buffer.hasRemaining()) {
+                    occurrencePositions.add(buffer.get());
+                }
+
+                Collections.sort(occurrencePositions);
+                assertThat(occurrencePositions, is(expectedOccurrencePositions));
+            }
+
+            automation.onBuildCompleted();
+
+            while (!automation.isPostbuildOptimizingCompleted()) {
+                sleep(10L);
+            }
+        }
+    }
+
+    @Test
+    public void test_SortedOccurrenceRetrieval() throws Exception {
+        SuffixAutomation automation = new SuffixAutomation(Paths.get("source"), DEFAULT_POSTBUILD_OPTIMIZING_POOL, DefinitiveSuffixAutomationStorage.HEAP, null);
+        Random random = new Random(1L);
+        StringBuilder source = new StringBuilder();
+
+        for (int i = 0; i < 5000; ++i) {
+            source.append((char)('a' + random.nextInt(3)));
+        }
+
+        extend(automation, source.toString());
+
+        // До и после оптимизации.
+        for (int round = 0; round < 2; ++round) {
+            for (int i = 0; i < 200; ++i) {
+                int soughtForPos = random.nextInt(source.length() - 4);
+                String soughtFor = source.substring(soughtForPos, soughtForPos + 1 + random.nextInt(4));
+                List<Long> expectedOccurrencePositions = findAll(source.toString(), soughtFor);
+                int offset = random.nextInt(expectedOccurrencePositions.size() + 2);
+                int limit = random.nextInt(50);
+
+                List<Long> occurrencePositions = new ArrayList<>();
+                OccurrencePosIterator iter = automation.getSortedOccurrencePosIterator(soughtFor, offset, limit);
+
+                while (iter.hasNext()) {
+                    occurrencePositions.add(iter.getNext());
+                }
+
+                int expectedFromIndex = Math.min(offset, expectedOccurrencePositions.size());
+                int expectedToIndex = Math.min(offset + limit, expectedOccurrencePositions.size());
+                assertThat(occurrencePositions, is(expectedOccurrencePositions.subList(expectedFromIndex, expectedToIndex)));
+            }
+
+            OccurrencePosIterator iter = automation.getSortedOccurrencePosIterator("ab", 1L, 2000L);
+            long[] chunk = new long[2000];
+            int count = iter.getNext(chunk, 0, chunk.length);
+            assertThat(count, is(Math.min(2000, findAll(source.toString(), "ab").size() - 1)));
+            assertFalse(iter.hasNext());
+
+            for (int i = 1; i < count; ++i) {
+                assertTrue(chunk[i - 1] < chunk[i]);
+            }
+
+            assertFalse(automation.getSortedOccurrencePosIterator("ab", 0L, 0L).hasNext());
+            assertFalse(automation.getSortedOccurrencePosIterator("ad", 0L, 10L).hasNext());
+
+            automation.onBuildCompleted();
+
+            while (!automation.isPostbuildOptimizingCompleted()) {
+                sleep(10L);
+            }
+        }
+    }
+
+    @Test
+    public void test_SplitOccurrenceRetrieval() throws Exception {
+        SuffixAutomation automation = new SuffixAutomation(Paths.get("source"), DEFAULT_POSTBUILD_OPTIMIZING_POOL, DefinitiveSuffixAutomationStorage.HEAP, null);
+        Random random = new Random(1L);
+        StringBuilder source = new StringBuilder();
+
+        for (int i = 0; i < 5000; ++i) {
+            source.append((char)('a' + random.nextInt(2)));
+        }
+
+        extend(automation, source.toString());
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        // До и после оптимизации.
+        for (int round = 0; round < 2; ++round) {
+            for (String soughtFor : new String[] {"a", "ab", "bab", "abba", "c"}) {
+                List<Long> occurrencePositions = pool.invoke(new OccurrenceCollectingTask(automation.getOccurrencePosIterator(soughtFor)));
+                Collections.sort(occurrencePositions);
+                assertThat(occurrencePositions, is(findAll(source.toString(), soughtFor)));
+            }
+
+            // Части закрываются независимо.
+            OccurrencePosIterator iter = automation.getOccurrencePosIterator("ab");
+            OccurrencePosIterator splitIter = iter.trySplit();
+            assertNotNull(splitIter);
+            splitIter.getNext();
+            splitIter.close();
+            List<Long> occurrencePositions = readAll(iter);
+            assertFalse(occurrencePositions.isEmpty());
+            assertNull(iter.trySplit());
+
+            // Упорядоченные итераторы не разделяются.
+            assertNull(automation.getSortedOccurrencePosIterator("ab", 0L, 10L).trySplit());
+
+            automation.onBuildCompleted();
+
+            while (!automation.isPostbuildOptimizingCompleted()) {
+                sleep(10L);
+            }
+        }
+
+        pool.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_BulkOccurrenceRetrieval_When_RangeIsOutOfArray() throws Exception {
+        SuffixAutomation automation = new SuffixAutomation(Paths.get("source"), DEFAULT_POSTBUILD_OPTIMIZING_POOL, DefinitiveSuffixAutomationStorage.HEAP, null);
+        extend(automation, "abab");
+        automation.getOccurrencePosIterator("ab").getNext(new long[2], 1, 2);
+    }
+
+    // ****************************** //
+
+    private void extend(SuffixAutomation automation, String chars) {
+        automation.extend(chars.toCharArray(), 0, chars.length());
+    }
+
+    private List<Long> findAll(String source, String soughtFor) {
+        List<Long> occurrencePositions = new ArrayList<>();
+
+        for (int pos = source.indexOf(soughtFor); pos != -1; pos = source.indexOf(soughtFor, pos + 1)) {
+            occurrencePositions.add((long)pos);
+        }
+
+        return occurrencePositions;
+    }
+
+    private List<Long> readAll(OccurrencePosIterator iter) {
+        List<Long> occurrencePositions = new ArrayList<>();
+
+        while (iter.hasNext()) {
+            occurrencePositions.add(iter.getNext());
+        }
+
+        Collections.sort(occurrencePositions);
+        return occurrencePositions;
+    }
+
+    @SuppressWarnings("serial")
+    private static class OccurrenceCollectingTask extends RecursiveTask<List<Long>> {
+
+        OccurrenceCollectingTask(OccurrencePosIterator iter) {
+            this.iter = iter;
+        }
+
+        @Override
+        protected List<Long> compute() {
+            OccurrencePosIterator splitIter = iter.trySplit();
+
+            if (splitIter != null) {
+                OccurrenceCollectingTask splitTask = new OccurrenceCollectingTask(splitIter);
+                splitTask.fork();
+                List<Long> occurrencePositions = new OccurrenceCollectingTask(iter).compute();
+                occurrencePositions.addAll(splitTask.join());
+
+                return occurrencePositions;
+            }
+
+            List<Long> occurrencePositions = new ArrayList<>();
+
+            while (iter.hasNext()) {
+                occurrencePositions.add(iter.getNext());
+            }
+
+            return occurrencePositions;
+        }
+
+        private final OccurrencePosIterator iter;
+    }
+}
@@ -0,0 +1,52 @@
+package net.devromik.textFileIndexer.impl.utils;
+
+import java.io.*;
+import java.util.Random;
+import org.junit.Test;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+public class ByteWideningReaderTest {
+
+    @Test(expected = NullPointerException.class)
+    public void test_Construction_When_InputStreamIsNull() throws Exception {
+        new ByteWideningReader(null);
+    }
+
+    @Test
+    public void test_Reading_When_InputStreamIsEmpty() throws Exception {
+        try (Reader reader = new ByteWideningReader(new ByteArrayInputStream(new byte[0]))) {
+            assertThat(reader.read(new char[16], 0, 16), is(-1));
+        }
+    }
+
+    @Test
+    public void test_Reading() throws Exception {
+        byte[] content = new byte[200000];
+        new Random(1L).nextBytes(content);
+        String expected = new String(content, ISO_8859_1);
+
+        // Блоки как меньше, так и больше внутреннего блока байт.
+        for (int readingBlockLength : new int[] {1, 7, 4096, 1 << 17}) {
+            try (Reader reader = new ByteWideningReader(new ByteArrayInputStream(content))) {
+                StringBuilder actual = new StringBuilder();
+                char[] readingBlock = new char[readingBlockLength + 3];
+                int readCharCount;
+
+                while ((readCharCount = reader.read(readingBlock, 3, readingBlockLength)) != -1) {
+                    actual.append(readingBlock, 3, readCharCount);
+                }
+
+                assertThat(actual.toString(), is(expected));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void test_Reading_When_ReaderIsClosed() throws Exception {
+        Reader reader = new ByteWideningReader(new ByteArrayInputStream(new byte[16]));
+        reader.close();
+        reader.read(new char[16], 0, 16);
+    }
+}
@@ -0,0 +1,200 @@
+package net.devromik.textFileIndexer.impl.utils;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static net.devromik.textFileIndexer.impl.utils.MappedSourceFileReader.MIN_MAPPING_WINDOW_LENGTH;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+public class MappedSourceFileReaderTest {
+
+    @Test
+    public void test_Reading_When_SourceFileIsEmpty() throws Exception {
+        File sourceFile = workDirectoryManager.newFile();
+
+        try (Reader reader = new MappedSourceFileReader(sourceFile, Charset.forName("UTF-8"))) {
+            assertThat(reader.read(new char[16], 0, 16), is(-1));
+        }
+
+        try (Reader reader = new MappedSourceFileReader(sourceFile, Charset.forName("ISO-8859-1"))) {
+            assertThat(reader.read(new char[16], 0, 16), is(-1));
+        }
+    }
+
+    @Test
+    public void test_Reading_When_EncodingIsMultiByte() throws Exception {
+        // Символы, в том числе суррогатные пары, пересекают границы окон и блоков.
+        String text = makeText("abcж€😀", 5000);
+
+        checkReading(text.getBytes("UTF-8"), Charset.forName("UTF-8"));
+        checkReading(text.getBytes("UTF-16"), Charset.forName("UTF-16"));
+    }
+
+    @Test
+    public void test_Reading_When_EncodingIsSingleByte() throws Exception {
+        checkReading(makeText("abcxyzéÿ", 5000).getBytes("ISO-8859-1"), Charset.forName("ISO-8859-1"));
+        checkReading(makeText("abcжё", 5000).getBytes("windows-1251"), Charset.forName("windows-1251"));
+    }
+
+    @Test
+    public void test_Reading_When_SourceFileContainsMalformedInput() throws Exception {
+        byte[] sourceFileContent = new byte[5000];
+        new Random(1L).nextBytes(sourceFileContent);
+
+        checkReading(sourceFileContent, Charset.forName("UTF-8"));
+        checkReading(sourceFileContent, Charset.forName("US-ASCII"));
+    }
+
+    @Test
+    public void test_Reading_When_DecoderFlushDoesNotFitIntoReadingBlock() throws Exception {
+        File sourceFile = workDirectoryManager.newFile();
+        Files.write(sourceFile.toPath(), new byte[100]);
+
+        // Все символы выдаются при сбросе декодера, порциями по размеру буфера читающего.
+        for (int readingBlockLength : new int[] {1, 2, 3, 4096}) {
+            String actual = readAll(new MappedSourceFileReader(sourceFile, new FlushingCharset(), MIN_MAPPING_WINDOW_LENGTH), readingBlockLength);
+            assertThat(actual.length(), is(100));
+            assertThat(actual.replace("x", ""), is(""));
+        }
+    }
+
+    @Test
+    public void test_CharCounting() throws Exception {
+        String text = makeText("abcж€😀", 5000);
+        File sourceFile = workDirectoryManager.newFile();
+
+        for (String encodingName : new String[] {"UTF-8", "UTF-16", "windows-1251"}) {
+            Charset encoding = Charset.forName(encodingName);
+            Files.write(sourceFile.toPath(), text.getBytes(encoding));
+            String expected = readAll(new InputStreamReader(new FileInputStream(sourceFile), encoding), 4096);
+
+            assertThat(MappedSourceFileReader.countChars(sourceFile, encoding), is((long)expected.length()));
+        }
+
+        assertThat(MappedSourceFileReader.countChars(workDirectoryManager.newFile(), Charset.forName("UTF-8")), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_MappingWindowLength_Precondition() throws Exception {
+        new MappedSourceFileReader(workDirectoryManager.newFile(), Charset.forName("UTF-8"), MIN_MAPPING_WINDOW_LENGTH - 1);
+    }
+
+    // ****************************** //
+
+    private String makeText(String alphabet, int length) {
+        Random random = new Random(length);
+        StringBuilder text = new StringBuilder();
+
+        while (text.length() < length) {
+            int charPos = random.nextInt(alphabet.length());
+
+            if (Character.isHighSurrogate(alphabet.charAt(charPos))) {
+                text.append(alphabet, charPos, charPos + 2);
+            }
+            else if (!Character.isLowSurrogate(alphabet.charAt(charPos))) {
+                text.append(alphabet.charAt(charPos));
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Результат чтения должен совпадать с результатом чтения посредством InputStreamReader.
+     */
+    private void checkReading(byte[] sourceFileContent, Charset sourceFileEncoding) throws Exception {
+        File sourceFile = workDirectoryManager.newFile();
+        Files.write(sourceFile.toPath(), sourceFileContent);
+        String expected = readAll(new InputStreamReader(new FileInputStream(sourceFile), sourceFileEncoding), 4096);
+
+        for (int mappingWindowLength : new int[] {MIN_MAPPING_WINDOW_LENGTH, 17, 1000, MappedSourceFileReader.DEFAULT_MAPPING_WINDOW_LENGTH}) {
+            for (int readingBlockLength : new int[] {1, 2, 3, 4096}) {
+                String actual = readAll(new MappedSourceFileReader(sourceFile, sourceFileEncoding, mappingWindowLength), readingBlockLength);
+                assertThat(actual, is(expected));
+            }
+        }
+    }
+
+    private String readAll(Reader reader, int readingBlockLength) throws IOException {
+        try {
+            StringBuilder result = new StringBuilder();
+            char[] readingBlock = new char[readingBlockLength];
+            int readCharCount;
+
+            while ((readCharCount = reader.read(readingBlock, 0, readingBlockLength)) != -1) {
+                assertTrue(readCharCount > 0);
+                result.append(readingBlock, 0, readCharCount);
+            }
+
+            return result.toString();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Кодировка с состоянием: каждый байт декодируется в символ 'x', но символы выдаются только при сбросе декодера.
+     */
+    private static class FlushingCharset extends Charset {
+
+        FlushingCharset() {
+            super("x-flushing-test", null);
+        }
+
+        @Override
+        public boolean contains(Charset charset) {
+            return charset instanceof FlushingCharset;
+        }
+
+        @Override
+        public boolean canEncode() {
+            return false;
+        }
+
+        @Override
+        public CharsetDecoder newDecoder() {
+            return new CharsetDecoder(this, 1.0f, 1.0f) {
+
+                @Override
+                protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+                    pendingCharCount += in.remaining();
+                    in.position(in.limit());
+                    return CoderResult.UNDERFLOW;
+                }
+
+                @Override
+                protected CoderResult implFlush(CharBuffer out) {
+                    while (pendingCharCount > 0 && out.hasRemaining()) {
+                        out.put('x');
+                        --pendingCharCount;
+                    }
+
+                    return pendingCharCount > 0 ? CoderResult.OVERFLOW : CoderResult.UNDERFLOW;
+                }
+
+                @Override
+                protected void implReset() {
+                    pendingCharCount = 0;
+                }
+
+                private int pendingCharCount;
+            };
+        }
+
+        @Override
+        public CharsetEncoder newEncoder() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // ****************************** //
+
+    @Rule
+    public TemporaryFolder workDirectoryManager = new TemporaryFolder();
+}
@@ -0,0 +1,85 @@
+package net.devromik.textFileIndexer.utils;
+
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class SegmentedAtomicReferenceArrayTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_Construction_When_SegmentLengthLogIsNegative() throws Exception {
+        new SegmentedAtomicReferenceArray<>(SegmentedAtomicReferenceArray.MIN_SEGMENT_LENGTH_LOG - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_Construction_When_SegmentLengthLogIsTooLarge() throws Exception {
+        new SegmentedAtomicReferenceArray<>(SegmentedAtomicReferenceArray.MAX_SEGMENT_LENGTH_LOG + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_EnsureCapacity_When_MinCapacityIsNegative() throws Exception {
+        new SegmentedAtomicReferenceArray<>().ensureCapacity(-1L);
+    }
+
+    @Test
+    public void test_EnsureCapacity() throws Exception {
+        SegmentedAtomicReferenceArray<Long> array = new SegmentedAtomicReferenceArray<>(3);
+        assertThat(array.getCapacity(), is(0L));
+
+        array.ensureCapacity(0L);
+        assertThat(array.getCapacity(), is(0L));
+
+        array.ensureCapacity(1L);
+        assertThat(array.getCapacity(), is(8L));
+
+        array.ensureCapacity(8L);
+        assertThat(array.getCapacity(), is(8L));
+
+        array.ensureCapacity(9L);
+        assertThat(array.getCapacity(), is(16L));
+
+        array.ensureCapacity(1000L);
+        assertThat(array.getCapacity(), is(1000L));
+
+        array.ensureCapacity(1001L);
+        assertThat(array.getCapacity(), is(1008L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_TrimToCapacity_When_MinCapacityIsNegative() throws Exception {
+        new SegmentedAtomicReferenceArray<>().trimToCapacity(-1L);
+    }
+
+    @Test
+    public void test_TrimToCapacity() throws Exception {
+        SegmentedAtomicReferenceArray<Long> array = new SegmentedAtomicReferenceArray<>(3);
+        array.ensureCapacity(100L);
+        array.set(8L, 10L);
+
+        array.trimToCapacity(9L);
+        assertThat(array.getCapacity(), is(16L));
+        assertThat(array.get(8L), is(10L));
+
+        // После усечения массив снова растет.
+        array.ensureCapacity(17L);
+        assertThat(array.getCapacity(), is(24L));
+        assertThat(array.get(8L), is(10L));
+        assertThat(array.get(16L), is(nullValue()));
+    }
+
+    @Test
+    public void test_GrowingKeepsElements() throws Exception {
+        SegmentedAtomicReferenceArray<Long> array = new SegmentedAtomicReferenceArray<>(2);
+        int ELEMENT_COUNT = 1000;
+
+        for (long i = 0L; i < ELEMENT_COUNT; ++i) {
+            array.ensureCapacity(i + 1L);
+            assertThat(array.get(i), is(nullValue()));
+            array.set(i, i);
+        }
+
+        for (long i = 0L; i < ELEMENT_COUNT; ++i) {
+            assertThat(array.get(i), is(i));
+        }
+    }
+}